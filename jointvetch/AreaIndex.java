@@ -0,0 +1,42 @@
+package jointvetch;
+
+import java.util.List;
+import com.vividsolutions.jts.algorithm.locate.IndexedPointInAreaLocator;
+import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * A point-in-polygon index over the polygons of an areal geometry, such as the tidal
+ * marsh. Each polygon gets its own IndexedPointInAreaLocator, so a point is inside
+ * the geometry if it is inside (or on the edge of) any one polygon, just as DistanceOp
+ * would find it at distance zero, even where polygons overlap.
+ */
+class AreaIndex
+{
+    private final STRtree tree = new STRtree();
+
+    AreaIndex(MultiPolygon mp)
+    {
+        for (int i = 0, s = mp.getNumGeometries(); i < s; i++)
+        {
+            Polygon p = (Polygon) mp.getGeometryN(i);
+            IndexedPointInAreaLocator locator = new IndexedPointInAreaLocator(p);
+            locator.locate(p.getCoordinate()); // the locator finishes its own index on first use
+            tree.insert(p.getEnvelopeInternal(), locator);
+        }
+        tree.build(); // build eagerly, so that queries never modify the tree
+    }
+
+    /**
+     * @return true if the coordinate lies inside or on the boundary of any polygon.
+     */
+    boolean covers(Coordinate c)
+    {
+        List candidates = tree.query(new Envelope(c));
+        for (int i = 0, s = candidates.size(); i < s; i++)
+        {
+            if (( (IndexedPointInAreaLocator) candidates.get(i) ).locate(c) != Location.EXTERIOR) return true;
+        }
+        return false;
+    }
+}
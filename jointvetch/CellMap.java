@@ -0,0 +1,150 @@
+package jointvetch;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from packed cell indices (y * width + x, never
+ * negative) to ints, without boxing. Entries can be visited by scanning positions
+ * 0 to capacity()-1 and skipping those where keyAt() is NONE.
+ */
+class CellMap
+{
+    static final int NONE = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    CellMap()
+    {
+        this(16);
+    }
+
+    CellMap(int expectedSize)
+    {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, NONE);
+        mask = capacity - 1;
+    }
+
+    private int slotOf(int key)
+    {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the value for key, or missing if there is none.
+     */
+    int get(int key, int missing)
+    {
+        for (int i = slotOf(key); ; i = (i + 1) & mask)
+        {
+            if (keys[i] == key) return values[i];
+            if (keys[i] == NONE) return missing;
+        }
+    }
+
+    boolean containsKey(int key)
+    {
+        for (int i = slotOf(key); ; i = (i + 1) & mask)
+        {
+            if (keys[i] == key) return true;
+            if (keys[i] == NONE) return false;
+        }
+    }
+
+    void put(int key, int value)
+    {
+        assert (key >= 0);
+        int i = slotOf(key);
+        while (keys[i] != NONE && keys[i] != key) i = (i + 1) & mask;
+        if (keys[i] == NONE)
+        {
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+        if (size * 2 > keys.length) grow();
+    }
+
+    /**
+     * Adds delta to the value for key (treating a missing key as 0).
+     * @return the new value
+     */
+    int add(int key, int delta)
+    {
+        int v = get(key, 0) + delta;
+        put(key, v);
+        return v;
+    }
+
+    void remove(int key)
+    {
+        int i = slotOf(key);
+        while (keys[i] != key)
+        {
+            if (keys[i] == NONE) return;
+            i = (i + 1) & mask;
+        }
+        keys[i] = NONE;
+        size--;
+
+        /* shift back any following entries that can no longer be reached */
+        for (int j = (i + 1) & mask; keys[j] != NONE; j = (j + 1) & mask)
+        {
+            int home = slotOf(keys[j]);
+            if (((j - home) & mask) >= ((j - i) & mask))
+            {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                keys[j] = NONE;
+                i = j;
+            }
+        }
+    }
+
+    void clear()
+    {
+        Arrays.fill(keys, NONE);
+        size = 0;
+    }
+
+    int capacity()
+    {
+        return keys.length;
+    }
+
+    int keyAt(int position)
+    {
+        return keys[position];
+    }
+
+    int valueAt(int position)
+    {
+        return values[position];
+    }
+
+    private void grow()
+    {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, NONE);
+        mask = keys.length - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldKeys[i] != NONE) put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
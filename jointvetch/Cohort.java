@@ -0,0 +1,135 @@
+package jointvetch;
+
+import sim.engine.*;
+import com.vividsolutions.jts.operation.distance.GeometryLocation;
+
+/**
+ * The plants of one plot at one life stage, kept as counts, for aggregate mode
+ * (Parameters.aggregate), or in hybrid mode for the plots that have more seedlings than
+ * the threshold (see Plot.admitPlants()). All the plants in a plot share its survival probability,
+ * carrying capacity and fecundity, so rather than each making its own draw, a cohort
+ * makes binomial draws for all of them, and scatters their seeds with multinomial
+ * draws over the plots around it (see DropKernel). Seeds that float are still
+ * followed one by one, by Hydrochory.
+ *
+ * The plants are counted by the spot of the plot they stand in (see DropKernel), since
+ * it matters where: plants stand near where their parents dropped them, so at the edge
+ * of a stand they're bunched on its inner side. Scattering seeds from anywhere in the
+ * plot instead would spread the stand faster than individual plants spread it.
+ * Reproducing plants are reported at the centers of their spots.
+ *
+ * A cohort waits in its PlantPhase, as a Plant would, whenever it has any plants.
+ */
+class Cohort implements Steppable
+{
+    private final HoltsCreek hc;
+    private final Plot plot;
+    private final int x, y;
+    private final Plant.LifeStage stage;
+
+    private final int[] counts = new int[DropKernel.SPOTS * DropKernel.SPOTS]; // by spot
+    private int count;
+
+    Cohort(HoltsCreek hc, Plot plot, int x, int y, Plant.LifeStage stage)
+    {
+        this.hc = hc;
+        this.plot = plot;
+        this.x = x;
+        this.y = y;
+        this.stage = stage;
+    }
+
+    /**
+     * Adds n plants at the spot, to be stepped on the next date of the cohort's phase.
+     */
+    void add(int spot, int n)
+    {
+        if (n == 0) return;
+        if (count == 0)
+        {
+            if (stage == Plant.LifeStage.IMPLANTED) hc.seedlingSurvival.add(this);
+            else hc.reproduction.add(this);
+        }
+        counts[spot] += n;
+        count += n;
+    }
+
+    int getCount()
+    {
+        return count;
+    }
+
+    public void step(SimState state)
+    {
+        /* a cohort's plants move on to another cohort, so none are added to it while it's stepped */
+        count = 0;
+
+        if (stage == Plant.LifeStage.IMPLANTED)
+        {
+            double survivalProb = plot.getSurvivalProb();
+            Cohort adults = plot.getAdults();
+            for (int spot = 0; spot < counts.length; spot++)
+            {
+                int n = counts[spot];
+                if (n == 0) continue;
+                counts[spot] = 0;
+                int survivors = hc.nextBinomial(n, survivalProb);
+                plot.registerNewPlants(survivors);
+                adults.add(spot, survivors);
+            }
+        }
+        else if (stage == Plant.LifeStage.ADULT)
+        {
+            double adjustment = plot.getCarryingCapacityAdjustment();
+            GeometryLocation entryLocation = hc.entryMap.getEntryLocation(x, y); // depends only on the plot, see EntryMap
+            for (int spot = 0; spot < counts.length; spot++)
+            {
+                int n = counts[spot];
+                if (n == 0) continue;
+                counts[spot] = 0;
+                int reproducing = hc.nextBinomial(n, adjustment);
+                plot.deregisterPlants(n - reproducing);
+                if (reproducing > 0)
+                {
+                    reproduce(spot, reproducing, entryLocation);
+                    hc.reproducingPlants.add(hc.redRaster.columnToX(x + DropKernel.getCenterU(spot)),
+                        hc.redRaster.rowToY(y + DropKernel.getCenterV(spot)), reproducing); // will be cleared on Dec 31.
+                }
+            }
+        }
+        else throw new AssertionError();
+    }
+
+    /**
+     * Scatters the seeds of the reproducing plants at the spot over the plots around
+     * it, as Plant.reproduce() does for each plant.
+     */
+    private void reproduce(int spot, int reproducing, GeometryLocation entryLocation)
+    {
+        long seeds = (long) reproducing * plot.getFecundity();
+        if (seeds <= 0) return;
+        assert (seeds <= Integer.MAX_VALUE);
+
+        if (entryLocation != null
+            && !hc.redRaster.contains(hc.redRaster.toX(entryLocation.getCoordinate().x),
+                hc.redRaster.toY(entryLocation.getCoordinate().y))) return; // very rare OOB exception
+
+        DropKernel kernel = DropKernel.UNIT;
+        int remaining = (int) seeds;
+        double remainingProbability = 1.0;
+        for (int k = 0, s = kernel.size(spot); k < s && remaining > 0; k++)
+        {
+            double p = kernel.getProbability(spot, k);
+            int landed = (k == s - 1) ? remaining : hc.nextBinomial(remaining, p / remainingProbability);
+            remaining -= landed;
+            remainingProbability -= p;
+
+            int tx = x + kernel.getDX(spot, k);
+            int ty = y + kernel.getDY(spot, k);
+            if (landed > 0 && hc.redRaster.contains(tx, ty))
+            {
+                hc.hydrochory.dropAll(tx, ty, kernel.getTarget(spot, k), landed, entryLocation);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package jointvetch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import com.vividsolutions.jts.geom.Envelope;
+import sim.field.geo.GeomGridField;
+import sim.field.grid.IntGrid2D;
+
+/**
+ * The competition raster, packed one byte per cell. Its colors are the quantiles 0 to
+ * 255, plus HoltsCreek.RIVER_RASTER_COLOR for the river, so the cells are stored in a
+ * flat row-major byte buffer, with the code RIVER standing for the river. The buffer
+ * is on the heap when the raster is packed, or the memory-mapped cache file when it is
+ * loaded from one (see RasterCache). Color 255
+ * has no code of its own: the few cells that have it are also coded RIVER, and are
+ * told apart by a bit mask, which is only allocated if there are any.
+ *
+ * Like GeomGridField, row 0 is at the top of the MBR.
+ */
+class CompetitionRaster
+{
+    static final int RIVER = 0xFF;
+
+    final int width, height;
+    private final ByteBuffer cells; // y * width + x; only read with absolute gets, so it can be shared
+    private final long[] color255; // bit mask over cells, or null if no cell has color 255
+
+    private final Envelope MBR;
+    private final double minX, maxY;
+    private final double pixelWidth, pixelHeight;
+
+    CompetitionRaster(int width, int height, ByteBuffer cells, long[] color255, Envelope MBR,
+        double pixelWidth, double pixelHeight)
+    {
+        assert (cells.capacity() == width * height);
+        this.width = width;
+        this.height = height;
+        this.cells = cells;
+        this.color255 = color255;
+        this.MBR = new Envelope(MBR);
+        minX = MBR.getMinX();
+        maxY = MBR.getMaxY();
+        this.pixelWidth = pixelWidth;
+        this.pixelHeight = pixelHeight;
+    }
+
+    /**
+     * Packs an imported raster.
+     * @throws IOException if a cell is neither a color nor the river.
+     */
+    static CompetitionRaster pack(GeomGridField raster) throws IOException
+    {
+        int[][] field = ( (IntGrid2D) raster.getGrid() ).field;
+        int width = raster.getGridWidth();
+        int height = raster.getGridHeight();
+        if ((long) width * height > Integer.MAX_VALUE)
+            throw new IOException("Competition raster is too large: " + width + "x" + height);
+
+        byte[] cells = new byte[width * height];
+        long[] color255 = null;
+        for (int x = 0; x < width; x++)
+        {
+            int[] column = field[x];
+            for (int y = 0; y < height; y++)
+            {
+                int color = column[y];
+                int cell = y * width + x;
+                if (color == HoltsCreek.RIVER_RASTER_COLOR)
+                {
+                    cells[cell] = (byte) RIVER;
+                }
+                else if (color >= 0 && color < 256)
+                {
+                    cells[cell] = (byte) color;
+                    if (color == 255)
+                    {
+                        if (color255 == null) color255 = new long[(cells.length + 63) >>> 6];
+                        color255[cell >>> 6] |= 1L << cell;
+                    }
+                }
+                else throw new IOException("Unexpected color " + color + " at (" + x + ", " + y + ")");
+            }
+        }
+        return new CompetitionRaster(width, height, ByteBuffer.wrap(cells), color255, raster.getMBR(),
+            raster.getPixelWidth(), raster.getPixelHeight());
+    }
+
+    /**
+     * @return the same cells, laid over different bounds. The cells are shared.
+     */
+    CompetitionRaster withBounds(Envelope MBR, double pixelWidth, double pixelHeight)
+    {
+        return new CompetitionRaster(width, height, cells, color255, MBR, pixelWidth, pixelHeight);
+    }
+
+    /**
+     * @return the color of the cell, or HoltsCreek.RIVER_RASTER_COLOR.
+     * @throws ArrayIndexOutOfBoundsException if the cell is outside the raster, as
+     * IntGrid2D would, rather than reading whichever cell y * width + x lands on.
+     */
+    int getColor(int x, int y)
+    {
+        if (!contains(x, y))
+            throw new ArrayIndexOutOfBoundsException("(" + x + ", " + y + ") is outside the " +
+                width + "x" + height + " competition raster");
+        int cell = y * width + x;
+        int code = cells.get(cell) & 0xFF;
+        if (code != RIVER) return code;
+        if (color255 != null && (color255[cell >>> 6] & (1L << cell)) != 0) return 255;
+        return HoltsCreek.RIVER_RASTER_COLOR;
+    }
+
+    /**
+     * @return the column of the cell that x lies in, as GeomGridField.toXCoord().
+     */
+    int toX(double x)
+    {
+        return (int) Math.floor(toColumn(x));
+    }
+
+    /**
+     * @return the row of the cell that y lies in, as GeomGridField.toYCoord().
+     */
+    int toY(double y)
+    {
+        return (int) Math.floor(toRow(y));
+    }
+
+    /**
+     * @return how many columns x lies from the left of the MBR, including the fraction
+     * of the way across its cell.
+     */
+    double toColumn(double x)
+    {
+        return (x - minX) / pixelWidth;
+    }
+
+    /**
+     * @return how many rows y lies from the top of the MBR, as toColumn().
+     */
+    double toRow(double y)
+    {
+        return (maxY - y) / pixelHeight;
+    }
+
+    /**
+     * @return the x coordinate a (fractional) column lies at; the inverse of toColumn().
+     */
+    double columnToX(double column)
+    {
+        return minX + column * pixelWidth;
+    }
+
+    /**
+     * @return the y coordinate a (fractional) row lies at; the inverse of toRow().
+     */
+    double rowToY(double row)
+    {
+        return maxY - row * pixelHeight;
+    }
+
+    boolean contains(int x, int y)
+    {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    Envelope getMBR()
+    {
+        return new Envelope(MBR);
+    }
+
+    double getPixelWidth()
+    {
+        return pixelWidth;
+    }
+
+    double getPixelHeight()
+    {
+        return pixelHeight;
+    }
+
+    /* the packed form, for RasterCache */
+
+    /**
+     * @return a view of the cells, from the first.
+     */
+    ByteBuffer getCells()
+    {
+        return cells.duplicate();
+    }
+
+    long[] getColor255Mask()
+    {
+        return color255;
+    }
+}
@@ -0,0 +1,108 @@
+package jointvetch;
+
+import sim.util.IntBag;
+
+/**
+ * Single-linkage clustering: points closer than epsilon belong to the same cluster,
+ * transitively. This is what textbook DBSCAN (see Parameters.textbookDBSCAN)
+ * reduces to when minPts is 1 (every point is a core point), but it needs only a
+ * union-find over the points, with no neighbor sets or noise bookkeeping. Clusters
+ * are reported in the same order DBSCAN finds them, that is, by their lowest-indexed
+ * point. As in DBSCAN, a point may stand for several plants.
+ */
+class ConnectedComponents
+{
+    private final double[] xs, ys;
+    private final int[] counts; // plants at each point, or null if one each
+    private final int n;
+    private final double epsilon;
+
+    private final int[] parent;
+    private final int[] size;
+
+    ConnectedComponents(double[] xs, double[] ys, int n, double epsilon)
+    {
+        this(xs, ys, null, n, epsilon);
+    }
+
+    /**
+     * @param counts The number of plants at each point, or null if just one.
+     */
+    ConnectedComponents(double[] xs, double[] ys, int[] counts, int n, double epsilon)
+    {
+        this.xs = xs;
+        this.ys = ys;
+        this.counts = counts;
+        this.n = n;
+        this.epsilon = epsilon;
+        parent = new int[n];
+        size = new int[n];
+    }
+
+    /**
+     * @return the number of plants in each cluster.
+     */
+    int[] getClusterSizes()
+    {
+        for (int i = 0; i < n; i++)
+        {
+            parent[i] = i;
+            size[i] = (counts == null) ? 1 : counts[i];
+        }
+
+        SpatialGrid grid = new SpatialGrid(xs, ys, n, epsilon);
+        IntBag neighbors = new IntBag();
+        for (int i = 0; i < n; i++)
+        {
+            neighbors.clear();
+            grid.within(xs[i], ys[i], epsilon, neighbors);
+            for (int k = 0, s = neighbors.size(); k < s; k++)
+            {
+                union(i, neighbors.get(k));
+            }
+        }
+
+        /* roots are visited in order of their lowest-indexed point */
+        IntBag clusterSizes = new IntBag();
+        for (int i = 0; i < n; i++)
+        {
+            if (parent[i] == i)
+            {
+                clusterSizes.add(size[i]);
+            }
+        }
+        return clusterSizes.toArray();
+    }
+
+    private int find(int i)
+    {
+        while (parent[i] != i)
+        {
+            parent[i] = parent[parent[i]]; // path halving
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Joins the clusters of a and b. The lower-indexed root always survives, so
+     * every root is the lowest-indexed point of its cluster.
+     */
+    private void union(int a, int b)
+    {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra == rb) return;
+
+        if (ra < rb)
+        {
+            parent[rb] = ra;
+            size[ra] += size[rb];
+        }
+        else
+        {
+            parent[ra] = rb;
+            size[rb] += size[ra];
+        }
+    }
+}
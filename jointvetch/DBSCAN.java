@@ -1,113 +1,195 @@
 package jointvetch;
 
-import sim.util.Bag;
-import sim.util.geo.MasonGeometry;
-import com.vividsolutions.jts.operation.distance.DistanceOp;
+import sim.util.IntBag;
 
+/**
+ * DBSCAN over points held in primitive x/y arrays. Region queries go through an
+ * epsilon-sized SpatialGrid, so clustering runs in near-linear time rather than
+ * comparing every point with every other. Noise points are reported as clusters
+ * of one, after the true clusters.
+ *
+ * By default a cluster is what the original implementation made of it: a seed and
+ * its direct neighbors (see expandCluster()). The textbook algorithm, which grows
+ * each cluster through every core point it reaches, is used on request (see
+ * Parameters.textbookDBSCAN); it finds fewer, larger clusters.
+ *
+ * A point may stand for several plants at the same location, as a Cohort's do. It
+ * then counts as that many points, both towards minPts and in the cluster sizes, so
+ * the clusters are the ones the plants would make as points of their own.
+ */
 class DBSCAN
 {
-    private Bag geometries = new Bag(); // actual MasonGeometries
-    private Bag database = new Bag(); // 'DBSCAN objects'
-    private double epsilon; // distance
-    private int minPts; // minimum cluster size
-    private Bag clusters; // return bag of clusters
+    private final double[] xs, ys; // point coordinates
+    private final int[] counts; // plants at each point, or null if one each
+    private final int n;
+    private final double epsilon; // distance
+    private final int minPts; // minimum cluster size
+    private final boolean textbook; // grow clusters through their core points
+    private final SpatialGrid grid;
 
-    private static class DBObj
-    {
-        MasonGeometry geomPoint; 
-        boolean visited; 
-        boolean noise;
-        boolean clustered;
+    private boolean[] visited;
+    private boolean[] noise;
+    private boolean[] clustered;
+    private boolean[] queued; // already waiting in the current cluster's expansion queue
 
-        DBObj(MasonGeometry p) 
-        {
-            this.geomPoint = p;
-            this.visited = false;
-            this.noise = false; 
-            this.clustered = false;
-        }
+    private final IntBag neighborPts = new IntBag();
+    private final IntBag clusterSizes = new IntBag();
+
+    DBSCAN(double[] xs, double[] ys, int n, double epsilon, int minPts, boolean textbook)
+    {
+        this(xs, ys, null, n, epsilon, minPts, textbook);
     }
 
-    Bag getPopulations(Bag masonGeometries, double epsilon, int minPts)
+    /**
+     * @param counts The number of plants at each point, or null if just one.
+     */
+    DBSCAN(double[] xs, double[] ys, int[] counts, int n, double epsilon, int minPts, boolean textbook)
     {
-        clusters = new Bag();
-        this.geometries.addAll(masonGeometries);
-        for (int j = 0, s = geometries.size(); j < s; j++) 
-        {
-            this.database.add(new DBObj( (MasonGeometry) geometries.get(j) ));
-        }
+        this.xs = xs;
+        this.ys = ys;
+        this.counts = counts;
+        this.n = n;
         this.epsilon = epsilon;
         this.minPts = minPts;
+        this.textbook = textbook;
+        grid = new SpatialGrid(xs, ys, n, epsilon);
+    }
 
-        for (int i = 0, s = database.size(); i < s; i++)
+    /**
+     * @return the number of plants in each cluster, noise included.
+     */
+    int[] getClusterSizes()
+    {
+        visited = new boolean[n];
+        noise = new boolean[n];
+        clustered = new boolean[n];
+        queued = textbook ? new boolean[n] : null;
+        clusterSizes.clear();
+
+        for (int i = 0; i < n; i++)
         {
-            DBObj current = (DBObj) database.get(i);
-            if (!current.visited)
+            if (!visited[i])
             {
-                current.visited = true;
-                Bag neighborPts = new Bag(regionQuery(current));
-                if (neighborPts.size() < minPts)
+                visited[i] = true;
+                regionQuery(i);
+                if (neighborCount() < minPts)
+                {
+                    noise[i] = true;
+                }
+                else if (textbook)
                 {
-                    current.noise = true;
+                    growCluster(i);
                 }
                 else
                 {
-                    Bag cluster = new Bag();
-                    expandCluster(current, cluster, neighborPts);
+                    expandCluster(i);
                 }
             }
         }
 
-        for (int i = 0, s = database.size(); i < s; i++)
+        for (int i = 0; i < n; i++)
         {
-            DBObj cur = (DBObj) database.get(i);
-            if (cur.noise)
+            if (noise[i])
             {
-                Bag noiseBag = new Bag();
-                noiseBag.add(cur.geomPoint);
-                clusters.add(noiseBag);
+                for (int j = count(i); j > 0; j--) clusterSizes.add(1);
             }
         }
-        return clusters;
+        return clusterSizes.toArray();
     }
 
-    private void expandCluster(DBObj current, Bag cluster, Bag neighborPts) 
+    /**
+     * Builds the cluster seeded by the current point, whose neighbors are in
+     * neighborPts. As in the original implementation, the cluster takes in the
+     * seed's direct neighbors only: the loop bound was read before the neighbors'
+     * own region queries could add to neighborPts, so what they found was never
+     * reached. Those queries are therefore skipped; the neighbors are only marked
+     * visited.
+     */
+    private void expandCluster(int current)
     {
-        cluster.add(current.geomPoint);
-        current.clustered = true;
+        int size = count(current);
+        clustered[current] = true;
         for (int k = 0, s = neighborPts.size(); k < s; k++) // for each point P' in NeighborPts
         {
-            DBObj kth = (DBObj) neighborPts.get(k);
-            if (!kth.visited) // if P' is not visited
+            int kth = neighborPts.get(k);
+            visited[kth] = true; // mark P' as visited
+            if (!clustered[kth]) // if P' is not yet member of any cluster
             {
-                kth.visited = true; // mark P' as visited
-                Bag neighborPtsPrime = regionQuery(kth); // NeighborPts' = regionQuery(P', eps)
-                if (neighborPtsPrime.size() >= minPts) // if size of NeighborPts' >= MinPts
+                size += count(kth);
+                clustered[kth] = true;
+                noise[kth] = false; // if it was previously marked as noise
+            }
+        }
+        clusterSizes.add(size);
+    }
+
+    /**
+     * Builds the cluster seeded by the current point as the textbook algorithm does,
+     * querying each neighbor in turn and queueing the neighbors of those that are
+     * core points. A point reached a second time would be skipped anyway (it is
+     * already visited and clustered), so each point is only ever queued once; this
+     * keeps the queue linear in the cluster size.
+     */
+    private void growCluster(int current)
+    {
+        int size = count(current);
+        clustered[current] = true;
+
+        IntBag queue = new IntBag();
+        enqueue(queue);
+        for (int k = 0; k < queue.size(); k++) // for each point P' in NeighborPts
+        {
+            int kth = queue.get(k);
+            if (!visited[kth]) // if P' is not visited
+            {
+                visited[kth] = true; // mark P' as visited
+                regionQuery(kth); // NeighborPts' = regionQuery(P', eps)
+                if (neighborCount() >= minPts) // if size of NeighborPts' >= MinPts
                 {
-                    neighborPts.addAll(neighborPtsPrime); // NeighborPts = NeighborPts joined with NeighborPts'
+                    enqueue(queue); // NeighborPts = NeighborPts joined with NeighborPts'
                 }
             }
-            if (!kth.clustered) // if P' is not yet member of any cluster
+            if (!clustered[kth]) // if P' is not yet member of any cluster
             {
-                cluster.add(kth.geomPoint);
-                kth.clustered = true;
-                kth.noise = false; // if it was previously marked as noise
-            } 
+                size += count(kth);
+                clustered[kth] = true;
+                noise[kth] = false; // if it was previously marked as noise
+            }
         }
-        clusters.add(cluster);
+        clusterSizes.add(size);
     }
 
-    private Bag regionQuery(DBObj p)
-    { 
-        Bag neighborPts = new Bag();
-        for (int i = 0, s = database.size(); i < s; i++)
+    private void enqueue(IntBag queue)
+    {
+        for (int k = 0, s = neighborPts.size(); k < s; k++)
         {
-            DBObj other = (DBObj) database.get(i);
-            if (DistanceOp.distance(other.geomPoint.getGeometry(), p.geomPoint.getGeometry()) <= epsilon)
+            int p = neighborPts.get(k);
+            if (!queued[p])
             {
-                neighborPts.add(database.get(i));
+                queued[p] = true;
+                queue.add(p);
             }
         }
-        return neighborPts;
-    } 
+    }
+
+    private int count(int p)
+    {
+        return (counts == null) ? 1 : counts[p];
+    }
+
+    /* the number of plants in neighborPts */
+    private int neighborCount()
+    {
+        if (counts == null) return neighborPts.size();
+
+        int c = 0;
+        for (int k = 0, s = neighborPts.size(); k < s; k++) c += counts[neighborPts.get(k)];
+        return c;
+    }
+
+    private void regionQuery(int p)
+    {
+        neighborPts.clear();
+        grid.within(xs[p], ys[p], epsilon, neighborPts);
+    }
 }
@@ -0,0 +1,166 @@
+package jointvetch;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import org.apache.commons.math3.distribution.GammaDistribution;
+
+/**
+ * Where the seeds of plants at a given spot of their plot land, as the probability of
+ * landing in each spot of the plots around it. A seed travels a distance drawn from the
+ * seed drop distribution (see Plant), truncated at Plant.MAX_SEED_DROP_DIST, in a
+ * uniformly random direction. The probabilities are integrated numerically, once, so
+ * that plot-level aggregates (see Cohort) can scatter a spot's seeds with one
+ * multinomial draw rather than one draw per seed.
+ *
+ * Each plot is divided into SPOTS x SPOTS spots, numbered row by row from its top left
+ * corner, as the raster's columns and rows run.
+ */
+class DropKernel
+{
+    /* for plots one meter square, as the competition raster's are; built when first used */
+    static final DropKernel UNIT = new DropKernel(1.0);
+
+    static final int SPOTS = 4; // per side of the plot
+    private static final int POSITIONS = 8; // per side of each spot
+    private static final int DISTANCES = 64;
+    private static final int ANGLES = 128;
+
+    /* for each spot, the spots seeds can land in, as the column and row offsets of their
+        plot from the parent's and the spot within it, in decreasing order of probability */
+    private final int[][] dx, dy, target;
+    private final double[][] probability;
+
+    DropKernel(double cellSize)
+    {
+        /* the quantiles of the truncated drop distance, in cells */
+        double variance = Plant.SEED_DROP_DIST_SD * Plant.SEED_DROP_DIST_SD;
+        GammaDistribution gamma = new GammaDistribution(
+            Plant.SEED_DROP_DIST_MEAN * Plant.SEED_DROP_DIST_MEAN / variance,
+            variance / Plant.SEED_DROP_DIST_MEAN);
+        double truncation = gamma.cumulativeProbability(Plant.MAX_SEED_DROP_DIST);
+        double[] distances = new double[DISTANCES];
+        for (int k = 0; k < DISTANCES; k++)
+        {
+            distances[k] = gamma.inverseCumulativeProbability((k + 0.5) / DISTANCES * truncation) / cellSize;
+        }
+        double[] cos = new double[ANGLES], sin = new double[ANGLES];
+        for (int a = 0; a < ANGLES; a++)
+        {
+            double angle = (a + 0.5) / ANGLES * 2 * Math.PI;
+            cos[a] = Math.cos(angle);
+            sin[a] = Math.sin(angle);
+        }
+
+        int reach = (int) Math.ceil(Plant.MAX_SEED_DROP_DIST / cellSize) + 1;
+        int side = (2 * reach + 1) * SPOTS; // in spots
+        dx = new int[SPOTS * SPOTS][];
+        dy = new int[SPOTS * SPOTS][];
+        target = new int[SPOTS * SPOTS][];
+        probability = new double[SPOTS * SPOTS][];
+        for (int spot = 0; spot < SPOTS * SPOTS; spot++)
+        {
+            double[] mass = new double[side * side];
+            for (int i = 0; i < POSITIONS; i++)
+            {
+                double u = (spot % SPOTS + (i + 0.5) / POSITIONS) / SPOTS;
+                for (int j = 0; j < POSITIONS; j++)
+                {
+                    double v = (spot / SPOTS + (j + 0.5) / POSITIONS) / SPOTS;
+                    for (int a = 0; a < ANGLES; a++)
+                    {
+                        for (int k = 0; k < DISTANCES; k++)
+                        {
+                            /* in spots from the corner of the area the seeds can reach; rows run southward */
+                            int sx = (int) Math.floor((u + reach + distances[k] * cos[a]) * SPOTS);
+                            int sy = (int) Math.floor((v + reach - distances[k] * sin[a]) * SPOTS);
+                            mass[sy * side + sx]++;
+                        }
+                    }
+                }
+            }
+
+            int n = 0;
+            for (int c = 0; c < mass.length; c++) if (mass[c] > 0) n++;
+            Integer[] order = new Integer[n];
+            for (int c = 0, i = 0; c < mass.length; c++) if (mass[c] > 0) order[i++] = c;
+            final double[] m = mass;
+            Arrays.sort(order, new Comparator<Integer>()
+            {
+                public int compare(Integer p, Integer q)
+                {
+                    return Double.compare(m[q], m[p]);
+                }
+            });
+
+            double total = (double) POSITIONS * POSITIONS * ANGLES * DISTANCES;
+            dx[spot] = new int[n];
+            dy[spot] = new int[n];
+            target[spot] = new int[n];
+            probability[spot] = new double[n];
+            for (int i = 0; i < n; i++)
+            {
+                int c = order[i];
+                int sx = c % side, sy = c / side;
+                dx[spot][i] = sx / SPOTS - reach;
+                dy[spot][i] = sy / SPOTS - reach;
+                target[spot][i] = (sy % SPOTS) * SPOTS + sx % SPOTS;
+                probability[spot][i] = mass[c] / total;
+            }
+        }
+    }
+
+    /**
+     * @return the spot of a plot that a position lies in, given as the fractions (u, v) of
+     * the way across and down the plot.
+     */
+    static int spotOf(double u, double v)
+    {
+        int i = Math.min(SPOTS - 1, Math.max(0, (int) (u * SPOTS)));
+        int j = Math.min(SPOTS - 1, Math.max(0, (int) (v * SPOTS)));
+        return j * SPOTS + i;
+    }
+
+    /**
+     * @return how far across the plot the center of the spot lies, as a fraction.
+     */
+    static double getCenterU(int spot)
+    {
+        return (spot % SPOTS + 0.5) / SPOTS;
+    }
+
+    /**
+     * @return how far down the plot the center of the spot lies, as a fraction.
+     */
+    static double getCenterV(int spot)
+    {
+        return (spot / SPOTS + 0.5) / SPOTS;
+    }
+
+    /**
+     * @return the number of spots the seeds of plants at the spot can land in.
+     */
+    int size(int spot)
+    {
+        return probability[spot].length;
+    }
+
+    int getDX(int spot, int i)
+    {
+        return dx[spot][i];
+    }
+
+    int getDY(int spot, int i)
+    {
+        return dy[spot][i];
+    }
+
+    int getTarget(int spot, int i)
+    {
+        return target[spot][i];
+    }
+
+    double getProbability(int spot, int i)
+    {
+        return probability[spot][i];
+    }
+}
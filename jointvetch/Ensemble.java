@@ -0,0 +1,187 @@
+package jointvetch;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import ec.util.MersenneTwisterFast;
+
+/**
+ * Sweeps HoltsCreek over every combination of the given parameter values, for any
+ * number of replicates, inside one JVM and on as many threads as there are cores.
+ * The runs are spread over a fork/join pool, whose idle threads steal work from busy
+ * ones, so one slow run holds up only its own thread rather than a whole batch.
+ *
+ * The landscape is loaded once and shared, read-only; each run is a self-contained
+ * HoltsCreek with its own Parameters, Environment and random number generator. Each
+ * run's seed depends only on the master seed, its parameters and its replicate
+ * number, and finished runs are recorded in a ResultStore, so a sweep that is
+ * stopped and started again with the same arguments skips the runs it already did.
+ * The results file records the sweep's run options, so it can't be resumed with
+ * different ones.
+ */
+class Ensemble
+{
+    private static void printUsage() {
+        System.err.println(
+            "Usage: Ensemble replicates stochMax,... hydrochoryBool,..." +
+            " implantationRate,... adjustmentFactor,... [-out resultsFile]" +
+            " [-seed seed] [-threads numThreads] [-years maxYears]" +
+            " [-textbookDBSCAN] [-incremental] [-history] [-ordered] [-aggregate]" +
+            " [-hybrid threshold] [-maxpop maxPopulation] [-verbose].\n" +
+            "Each run's -tag is its position in the sweep. Runs already in" +
+            " the results file are skipped; its options must match.");
+    }
+
+    /* one run of the sweep */
+    private static class Run
+    {
+        final long seed;
+        final String[] args;
+        final String key;
+        final String options; // see Parameters.getRunOptions()
+
+        Run(long masterSeed, int replicate, String[] args)
+        {
+            Parameters params = new Parameters(args);
+            this.seed = runSeed(masterSeed, params, replicate);
+            this.args = args;
+            key = ResultStore.key(seed, params);
+            options = params.getRunOptions();
+        }
+    }
+
+    /**
+     * Runs a range of the sweep, splitting it in halves until each task is one run.
+     */
+    private static class Sweep extends RecursiveAction
+    {
+        private final List<Run> runs;
+        private final int from, to;
+        private final Landscape landscape;
+        private final ResultStore store;
+
+        Sweep(List<Run> runs, int from, int to, Landscape landscape, ResultStore store)
+        {
+            this.runs = runs;
+            this.from = from;
+            this.to = to;
+            this.landscape = landscape;
+            this.store = store;
+        }
+
+        protected void compute()
+        {
+            if (to - from == 1)
+            {
+                Run run = runs.get(from);
+                store.record(run.key, Ensemble.run(run.seed, run.args, landscape));
+            }
+            else
+            {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Sweep(runs, from, mid, landscape, store),
+                    new Sweep(runs, mid, to, landscape, store));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 5) {
+            printUsage();
+            System.exit(1);
+        }
+
+        int replicates = Integer.parseInt(args[0]);
+        String[] stochMaxes = args[1].split(",");
+        String[] hydrochoryBools = args[2].split(",");
+        String[] implantationRates = args[3].split(",");
+        String[] adjustmentFactors = args[4].split(",");
+
+        long seed = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File out = null;
+        List<String> flags = new ArrayList<String>(); // passed on to every run
+        for (int i = 5; i < args.length; i++) {
+            if (args[i].equals("-out")) {
+                out = new File(args[++i]);
+            } else if (args[i].equals("-seed")) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                flags.add(args[i]);
+            }
+        }
+
+        int tag = 0;
+        List<Run> sweep = new ArrayList<Run>();
+        for (int r = 0; r < replicates; r++)
+        {
+            for (String stochMax : stochMaxes)
+            for (String hydrochoryBool : hydrochoryBools)
+            for (String implantationRate : implantationRates)
+            for (String adjustmentFactor : adjustmentFactors)
+            {
+                List<String> runArgs = new ArrayList<String>(Arrays.asList(
+                    stochMax, hydrochoryBool, implantationRate, adjustmentFactor));
+                runArgs.addAll(flags);
+                runArgs.add("-tag");
+                runArgs.add(String.valueOf(tag++));
+                sweep.add(new Run(seed, r, runArgs.toArray(new String[runArgs.size()])));
+            }
+        }
+
+        /* the flags are the same for every run, and so are the options */
+        ResultStore store = (out == null) ? new ResultStore(System.out)
+            : new ResultStore(out, sweep.isEmpty() ? "" : sweep.get(0).options);
+        List<Run> runs = new ArrayList<Run>();
+        for (Run run : sweep)
+        {
+            if (!store.isComplete(run.key)) runs.add(run);
+        }
+        System.out.println("Sweep: " + tag + " runs, " + (tag - runs.size()) + " already done.");
+
+        if (runs.size() > 0)
+        {
+            Landscape landscape = Landscape.load();
+            new ForkJoinPool(threads).invoke(new Sweep(runs, 0, runs.size(), landscape, store));
+        }
+        store.close();
+        System.exit(0);
+    }
+
+    /**
+     * @return the seed of a run, which depends only on the master seed, the run's
+     * independent variables and its replicate number.
+     */
+    private static long runSeed(long seed, Parameters params, int replicate)
+    {
+        int[] key = {
+            (int) seed, (int) (seed >>> 32), replicate,
+            Double.valueOf(params.stochMax).hashCode(),
+            Boolean.valueOf(params.hydrochoryBool).hashCode(),
+            Double.valueOf(params.implantationRate).hashCode(),
+            Double.valueOf(params.adjustmentFactor).hashCode(),
+            0x4a56 }; // so the key is never all zeros
+        return new MersenneTwisterFast(key).nextLong();
+    }
+
+    /**
+     * Runs one simulation to the end, that is, until the Environment kills it.
+     * @return the run's summary lines.
+     */
+    private static String run(long seed, String[] args, Landscape landscape)
+    {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        HoltsCreek hc = new HoltsCreek(seed, args, landscape);
+        hc.results = new PrintStream(lines);
+        hc.start();
+        while (hc.schedule.step(hc))
+        {
+        }
+        hc.finish();
+        hc.results.flush();
+        return lines.toString();
+    }
+}
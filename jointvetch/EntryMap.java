@@ -0,0 +1,344 @@
+package jointvetch;
+
+import java.io.*;
+import java.util.IdentityHashMap;
+import java.util.List;
+import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jts.geom.util.LinearComponentExtracter;
+import com.vividsolutions.jts.operation.distance.GeometryLocation;
+
+/**
+ * A precomputed raster, aligned with the competition raster, recording for every
+ * 1m plot where (if anywhere) seeds dropped there enter the river. The entry point
+ * depends only on a plant's location, so it is resolved once for the plot's center
+ * rather than by every reproducing plant, every year. Cells farther than the
+ * maximum distance from both the river and the tidal boundary have no entry.
+ *
+ * The map is cached in a file, along with what it was computed from: the raster's
+ * size, bounds and pixel size, the maximum distance, and a checksum of the river and
+ * tidal boundary coordinates. If any of these differ, or the file is damaged, the map
+ * is computed again.
+ */
+class EntryMap
+{
+    private static final int MAGIC = 0x4a56454d; // "JVEM"
+    private static final int VERSION = 2;
+    private static final int NO_ENTRY = -1;
+    private static final int UNCOMPUTED = -2;
+
+    private final int width, height;
+    private final int[] cellEntry; // row-major, index into the entry table, or NO_ENTRY
+
+    /* entry table */
+    private int numEntries;
+    private int[] entryLine; // component of river_mls
+    private int[] entrySegment; // segment within that component
+    private double[] entryFraction; // position along that segment, 0 - 1
+
+    private final LineString[] lines;
+
+    /* what the map is computed from, as recorded in the cache file */
+    private final Envelope MBR;
+    private final double pixelWidth, pixelHeight;
+    private final long checksum;
+
+    private EntryMap(CompetitionRaster grid, MultiLineString river, Geometry tidalBoundary)
+    {
+        width = grid.width;
+        height = grid.height;
+        cellEntry = new int[width * height];
+        MBR = grid.getMBR();
+        pixelWidth = grid.getPixelWidth();
+        pixelHeight = grid.getPixelHeight();
+        checksum = checksum(tidalBoundary, checksum(river, 17));
+
+        lines = new LineString[river.getNumGeometries()];
+        for (int i = 0; i < lines.length; i++)
+        {
+            lines[i] = (LineString) river.getGeometryN(i);
+        }
+
+        entryLine = new int[1024];
+        entrySegment = new int[1024];
+        entryFraction = new double[1024];
+    }
+
+    /**
+     * Reads the entry map from the cache file, or computes it (and writes the cache)
+     * if the file is missing or was built for a different landscape.
+     */
+    static EntryMap load(String cacheFile, Landscape landscape, MultiLineString river,
+        Geometry tidalBoundary, double maxDistance)
+    {
+        EntryMap map = new EntryMap(landscape.redRaster, river, tidalBoundary);
+        if (new File(cacheFile).exists())
+        {
+            try {
+                if (map.read(cacheFile, maxDistance))
+                {
+                    System.out.println("(Using cached river entry map.)");
+                    return map;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            map = new EntryMap(landscape.redRaster, river, tidalBoundary);
+        }
+
+        System.out.println("Computing river entry map...");
+        map.compute(landscape, river, tidalBoundary, maxDistance);
+        try {
+            map.write(cacheFile, maxDistance);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Couldn't write cached river entry map.");
+        }
+        System.out.println("...done.");
+        return map;
+    }
+
+    /**
+     * Returns where seeds dropped in cell (x, y) enter the river, or null if
+     * they cannot reach it.
+     */
+    GeometryLocation getEntryLocation(int x, int y)
+    {
+        int e = cellEntry[y * width + x];
+        if (e == NO_ENTRY) return null;
+
+        LineString line = lines[entryLine[e]];
+        int seg = entrySegment[e];
+        double f = entryFraction[e];
+        Coordinate p0 = line.getCoordinateN(seg);
+        Coordinate p1 = line.getCoordinateN(seg + 1);
+        return new GeometryLocation(line, seg,
+            new Coordinate(p0.x + f * (p1.x - p0.x), p0.y + f * (p1.y - p0.y)));
+    }
+
+    /**
+     * Only cells near a river or boundary segment can have an entry, so visit the
+     * cells around each segment rather than the whole raster.
+     */
+    private void compute(Landscape landscape, MultiLineString river, Geometry tidalBoundary,
+        double maxDistance)
+    {
+        java.util.Arrays.fill(cellEntry, UNCOMPUTED);
+
+        IdentityHashMap<LineString, Integer> lineIds = new IdentityHashMap<LineString, Integer>();
+        for (int i = 0; i < lines.length; i++) lineIds.put(lines[i], i);
+
+        double reach = maxDistance + Math.max(pixelWidth, pixelHeight);
+
+        for (Geometry g : new Geometry[] { river, tidalBoundary })
+        {
+            List<?> components = LinearComponentExtracter.getLines(g);
+            for (int i = 0, s = components.size(); i < s; i++)
+            {
+                computeAround((LineString) components.get(i), landscape, lineIds, reach, maxDistance);
+            }
+        }
+
+        for (int i = 0; i < cellEntry.length; i++)
+        {
+            if (cellEntry[i] == UNCOMPUTED) cellEntry[i] = NO_ENTRY;
+        }
+    }
+
+    /**
+     * Resolves the cells within reach of each segment of the line that are still
+     * uncomputed.
+     */
+    private void computeAround(LineString component, Landscape landscape,
+        IdentityHashMap<LineString, Integer> lineIds, double reach, double maxDistance)
+    {
+        CompetitionRaster grid = landscape.redRaster;
+        Coordinate center = new Coordinate();
+        Coordinate[] coords = component.getCoordinates();
+        for (int j = 0; j < coords.length - 1; j++)
+        {
+            Envelope env = new Envelope(coords[j], coords[j+1]);
+            env.expandBy(reach);
+            int minX = Math.max(0, grid.toX(env.getMinX()));
+            int maxX = Math.min(width - 1, grid.toX(env.getMaxX()));
+            int minY = Math.max(0, grid.toY(env.getMaxY()));
+            int maxY = Math.min(height - 1, grid.toY(env.getMinY()));
+            for (int y = minY; y <= maxY; y++)
+            {
+                for (int x = minX; x <= maxX; x++)
+                {
+                    int cell = y * width + x;
+                    if (cellEntry[cell] != UNCOMPUTED) continue;
+
+                    center.x = MBR.getMinX() + (x + 0.5) * pixelWidth;
+                    center.y = MBR.getMaxY() - (y + 0.5) * pixelHeight;
+                    GeometryLocation loc = findEntryLocation(landscape, center, maxDistance);
+                    cellEntry[cell] = (loc == null) ? NO_ENTRY :
+                        addEntry(lineIds.get(loc.getGeometryComponent()), loc.getSegmentIndex(),
+                            fractionAlong(loc));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the checksum folded with every coordinate of the geometry, in order.
+     */
+    private static long checksum(Geometry g, long checksum)
+    {
+        for (int i = 0, n = g.getNumGeometries(); i < n; i++)
+        {
+            Coordinate[] coords = g.getGeometryN(i).getCoordinates();
+            checksum = checksum * 31 + coords.length;
+            for (int j = 0; j < coords.length; j++)
+            {
+                checksum = checksum * 31 + Double.doubleToLongBits(coords[j].x);
+                checksum = checksum * 31 + Double.doubleToLongBits(coords[j].y);
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * The entry point is the nearest river point within maxDistance or, failing
+     * that, the river point nearest to a tidal boundary within maxDistance (seeds
+     * dropping near the wider parts of the river).
+     */
+    private static GeometryLocation findEntryLocation(Landscape landscape, Coordinate c, double maxDistance)
+    {
+        GeometryLocation entryLocation = landscape.river_fi.nearestLocation(c, maxDistance);
+        if (entryLocation == null)
+        {
+            GeometryLocation edgeLocation = landscape.tidalBoundary_fi.nearestLocation(c, maxDistance);
+            if (edgeLocation != null)
+            {
+                entryLocation = landscape.river_fi.nearestLocation(edgeLocation.getCoordinate());
+            }
+        }
+        return entryLocation;
+    }
+
+    private static double fractionAlong(GeometryLocation loc)
+    {
+        LineString line = (LineString) loc.getGeometryComponent();
+        Coordinate p0 = line.getCoordinateN(loc.getSegmentIndex());
+        Coordinate p1 = line.getCoordinateN(loc.getSegmentIndex() + 1);
+        double len = p0.distance(p1);
+        return (len == 0) ? 0 : p0.distance(loc.getCoordinate()) / len;
+    }
+
+    private int addEntry(int line, int segment, double fraction)
+    {
+        if (numEntries == entryLine.length)
+        {
+            entryLine = java.util.Arrays.copyOf(entryLine, numEntries * 2);
+            entrySegment = java.util.Arrays.copyOf(entrySegment, numEntries * 2);
+            entryFraction = java.util.Arrays.copyOf(entryFraction, numEntries * 2);
+        }
+        entryLine[numEntries] = line;
+        entrySegment[numEntries] = segment;
+        entryFraction[numEntries] = fraction;
+        return numEntries++;
+    }
+
+/* ------------------------
+ * Cache file: a header, then one (cell, line, segment, fraction) record per
+ * cell that has an entry. It's written under a temporary name and then renamed,
+ * as RasterCache.write() does, so no run ever reads a partly written cache.
+ * ------------------------ */
+    private void write(String cacheFile, double maxDistance) throws IOException
+    {
+        File file = new File(cacheFile).getAbsoluteFile();
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(temp)));
+        boolean written = false;
+        try {
+            writeHeader(out, maxDistance);
+            int n = 0;
+            for (int i = 0; i < cellEntry.length; i++)
+            {
+                if (cellEntry[i] != NO_ENTRY) n++;
+            }
+            out.writeInt(n);
+            for (int i = 0; i < cellEntry.length; i++)
+            {
+                int e = cellEntry[i];
+                if (e == NO_ENTRY) continue;
+                out.writeInt(i);
+                out.writeInt(entryLine[e]);
+                out.writeInt(entrySegment[e]);
+                out.writeDouble(entryFraction[e]);
+            }
+            written = true;
+        } finally {
+            out.close();
+            if (!written) temp.delete();
+        }
+
+        if (!temp.renameTo(file))
+        {
+            temp.delete();
+            throw new IOException("Couldn't rename " + temp + " to " + file);
+        }
+    }
+
+    private void writeHeader(DataOutputStream out, double maxDistance) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeDouble(MBR.getMinX());
+        out.writeDouble(MBR.getMaxX());
+        out.writeDouble(MBR.getMinY());
+        out.writeDouble(MBR.getMaxY());
+        out.writeDouble(pixelWidth);
+        out.writeDouble(pixelHeight);
+        out.writeInt(lines.length);
+        out.writeLong(checksum);
+        out.writeDouble(maxDistance);
+    }
+
+    /**
+     * @return false if the cache doesn't match this landscape, or holds an entry
+     * that can't be one of this landscape's.
+     */
+    private boolean read(String cacheFile, double maxDistance) throws IOException
+    {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(cacheFile)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                || in.readInt() != width || in.readInt() != height
+                || in.readDouble() != MBR.getMinX() || in.readDouble() != MBR.getMaxX()
+                || in.readDouble() != MBR.getMinY() || in.readDouble() != MBR.getMaxY()
+                || in.readDouble() != pixelWidth || in.readDouble() != pixelHeight
+                || in.readInt() != lines.length || in.readLong() != checksum
+                || in.readDouble() != maxDistance)
+            {
+                return false;
+            }
+            java.util.Arrays.fill(cellEntry, NO_ENTRY);
+            int n = in.readInt();
+            if (n < 0 || n > cellEntry.length) return false;
+            for (int i = 0; i < n; i++)
+            {
+                int cell = in.readInt();
+                int line = in.readInt();
+                int segment = in.readInt();
+                double fraction = in.readDouble();
+                if (cell < 0 || cell >= cellEntry.length || cellEntry[cell] != NO_ENTRY
+                    || line < 0 || line >= lines.length
+                    || segment < 0 || segment >= lines[line].getNumPoints() - 1
+                    || Double.isNaN(fraction) || Double.isInfinite(fraction))
+                {
+                    return false;
+                }
+                cellEntry[cell] = addEntry(line, segment, fraction);
+            }
+            return true;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -4,22 +4,18 @@ import java.util.*;
 import java.io.*;
 import sim.engine.SimState;
 import sim.engine.Steppable;
-import sim.util.*;
-import sim.util.geo.MasonGeometry;
-import sim.field.grid.ObjectGrid2D;
 import org.apache.commons.math3.stat.StatUtils;
 
 /**
  * A representation of the plants' environment, specifically embodying
- * those features which impact a plant's lifecycle. This is a singleton
- * class, designed to be owned by a governing simulation (subclass of
- * SimState.)
+ * those features which impact a plant's lifecycle. Each governing
+ * simulation (HoltsCreek) owns exactly one.
  * @author Stephen
  */
 class Environment implements Steppable
 {
-    private static Environment instance;
-    private HoltsCreek hc;
+    private final HoltsCreek hc;
+    private final Parameters params;
 
     private PrintWriter simStatsPw;
     private PrintWriter clusterStatsPw;
@@ -38,6 +34,9 @@ class Environment implements Steppable
     /* environmental stochasticity */
     private double currentEnvStoch;
 
+    /* carried over between years in incremental clustering mode */
+    private IncrementalClusterer incrementalClusterer;
+
     /* records */
     private List<Integer> populationHistory;
     private List<Double> environmentalHistory;
@@ -46,18 +45,10 @@ class Environment implements Steppable
         // "/Users/Theodore/Documents/Google_Drive/SJV_EcologicalModelling_Paper/analysis_and_validation/vital_rate_distro_derivation/";
         "/tmp/";
 
-    static synchronized Environment instance()
-    {
-        if (instance == null)
-        {
-            instance = new Environment();
-        }
-        return instance;
-    }
-
-    private Environment()
+    Environment(HoltsCreek hc)
     {
-        hc = HoltsCreek.instance();
+        this.hc = hc;
+        params = hc.params;
     
         populationHistory = new ArrayList<Integer>();
         environmentalHistory = new ArrayList<Double>();
@@ -66,12 +57,12 @@ class Environment implements Steppable
         environmentalHistory.add(currentEnvStoch);
 
         try {
-            new File(Parameters.SIM_STATS_FILE).delete();
-            new File(Parameters.CLUSTER_STATS_FILE).delete();
+            new File(params.simStatsFile).delete();
+            new File(params.clusterStatsFile).delete();
             simStatsPw = new PrintWriter(
-                new FileWriter(Parameters.SIM_STATS_FILE));
+                new FileWriter(params.simStatsFile));
             clusterStatsPw = new PrintWriter(
-                new FileWriter(Parameters.CLUSTER_STATS_FILE));
+                new FileWriter(params.clusterStatsFile));
             simStatsPw.println("\"year\",\"pop\",\"env\"");
             clusterStatsPw.println("\"year\",\"cluster.pop\"");
         } catch (IOException e) {
@@ -93,25 +84,27 @@ class Environment implements Steppable
             year++;
             notifyEndOfYearForPlots();
 
-            int n = hc.reproducingPlants_vf.getGeometries().size();
+            int n = hc.reproducingPlants.size();
             populationHistory.add(n);
             if (n == 0 || 
-                n > Parameters.MAX_POPULATION_COUNT ||
-                year >= Parameters.MAX_YEAR_COUNT) {
+                n > params.maxPopulationCount ||
+                year >= params.maxYearCount) {
                 try {
                     printStatistics();
                 } catch (IOException e) { e.printStackTrace(); }
-                if (year < Parameters.MAX_YEAR_COUNT) {
-                    simStatsPw.println(Parameters.MAX_YEAR_COUNT+","+
+                if (year < params.maxYearCount) {
+                    simStatsPw.println(params.maxYearCount+","+
                         populationHistory.get(populationHistory.size()-1)+","+
                         0);
                 }
                 simStatsPw.close();
                 clusterStatsPw.close();
-                System.exit(0);
+                if (params.plotHistory) printPlotHistories();
+                hc.kill(); // the run is over; other runs in this JVM carry on
+                return;
             }
 
-            if (Parameters.VERBOSE) {
+            if (params.verbose) {
                 try {
                     printStatistics();
                 } catch (IOException e) { e.printStackTrace(); }
@@ -120,7 +113,7 @@ class Environment implements Steppable
             currentEnvStoch = generateEnvironmentalStochasticity();
             environmentalHistory.add(currentEnvStoch);
             
-            hc.reproducingPlants_vf.clear();
+            hc.reproducingPlants.clear();
             hc.schedule.scheduleOnce(getClockTimeForNextNewYearDate(), this);
         }
         else throw new AssertionError();
@@ -132,7 +125,7 @@ class Environment implements Steppable
     private double generateEnvironmentalStochasticity()
     {
         double u = hc.random.nextDouble();
-        double stochMax = Parameters.stochMax;
+        double stochMax = params.stochMax;
         double stochMin = 1/stochMax;
 
         return Math.exp( (u*Math.log(stochMax)) + ((1 - u) * Math.log(stochMin)) );
@@ -145,21 +138,20 @@ class Environment implements Steppable
  * ------------------------------ */
     Plot getPlot(int x, int y)
     {
-        Plot plot = (Plot) ( (ObjectGrid2D) hc.plotGrid_gf.getGrid() ).get(x, y);
+        Plot plot = hc.plots.get(x, y);
         if (plot == null)
         {
-            plot = new Plot(x, y);
-            ( (ObjectGrid2D) hc.plotGrid_gf.getGrid() ).set(x, y, plot);
+            plot = new Plot(hc, x, y);
+            hc.plots.add(x, y, plot);
         }
         return plot;
     }
 
     private void notifyEndOfYearForPlots()
     {
-        Bag plots = ( (ObjectGrid2D) hc.plotGrid_gf.getGrid() ).elements();
-        for (int i = 0, s = plots.size(); i < s; i++)
+        for (int i = 0, s = hc.plots.size(); i < s; i++)
         { 
-            Plot p = (Plot) plots.get(i);
+            Plot p = hc.plots.plotAt(i);
             p.registerYearEnd(year);
         }
     }
@@ -180,10 +172,9 @@ class Environment implements Steppable
 
         int u=0, t=0, m=0, tr=0, d=0;
 
-        Bag plots = ( (ObjectGrid2D) hc.plotGrid_gf.getGrid() ).elements();
-        for (int i = 0, s = plots.size(); i < s; i++)
+        for (int i = 0, s = hc.plots.size(); i < s; i++)
         {
-            Plot p = (Plot) plots.get(i);
+            Plot p = hc.plots.plotAt(i);
             Plot.PlotType pt = p.getPlotType();
             if (pt.equals(Plot.PlotType.UNKNOWN)) u++;
             else if (pt.equals(Plot.PlotType.THRIVING)) t++;
@@ -193,34 +184,23 @@ class Environment implements Steppable
             else throw new AssertionError();
         }
 
-        int finalPopulation = hc.reproducingPlants_vf.getGeometries().size();
-        boolean noClusteringAnalysis = finalPopulation > Parameters.DBSCAN_CUTOFF;
-        String numClustersStr, clusterPopMeanStr, clusterPopSDDev;
-        if (noClusteringAnalysis)
-        {
-            numClustersStr = "NA";
-            clusterPopMeanStr = "NA";
-            clusterPopSDDev = "NA";
-        }
-        else
-        {
-            Bag clusters = runClusteringAnalysis();
-            int numClusters = clusters.size();
-            double[] clusterArr = new double[ numClusters ];
-            for (int i = 0; i < numClusters; i++)
-                clusterArr[i] = (double) ((Integer) clusters.get(i));
-
-            numClustersStr = String.valueOf(numClusters);
-            clusterPopMeanStr = String.valueOf((int) StatUtils.mean(clusterArr));
-            clusterPopSDDev = String.valueOf((int) Math.sqrt(StatUtils.populationVariance(clusterArr)));
-        }
+        int finalPopulation = hc.reproducingPlants.size();
+        int[] clusters = runClusteringAnalysis();
+        int numClusters = clusters.length;
+        double[] clusterArr = new double[ numClusters ];
+        for (int i = 0; i < numClusters; i++)
+            clusterArr[i] = (double) clusters[i];
+
+        String numClustersStr = String.valueOf(numClusters);
+        String clusterPopMeanStr = String.valueOf((int) StatUtils.mean(clusterArr));
+        String clusterPopSDDev = String.valueOf((int) Math.sqrt(StatUtils.populationVariance(clusterArr)));
 
         StringBuilder s = new StringBuilder();
         s.append(hc.seed + " ");
-        s.append(Parameters.stochMax + " ");
-        s.append(Parameters.hydrochoryBool + " ");
-        s.append(Parameters.implantationRate + " ");
-        s.append(Parameters.adjustmentFactor + " ");
+        s.append(params.stochMax + " ");
+        s.append(params.hydrochoryBool + " ");
+        s.append(params.implantationRate + " ");
+        s.append(params.adjustmentFactor + " ");
         s.append(year + " ");
         s.append(d + " "); // dead
         s.append(tr + " "); // transient
@@ -234,9 +214,9 @@ class Environment implements Steppable
         s.append((int) StatUtils.min(popHistArr) + " ");
         s.append((int) StatUtils.mean(popHistArr) + " ");
         s.append((int) Math.sqrt(StatUtils.populationVariance(popHistArr))); // stdev of population history
-        System.out.println(s);
+        hc.results.println(s);
 
-        if (Parameters.VERBOSE)
+        if (params.verbose)
         {
             System.out.println("Population History: " + populationHistory);
             System.out.println("Environmental History: " + environmentalHistory);
@@ -250,17 +230,44 @@ class Environment implements Steppable
         }
     }
 
-    private Bag runClusteringAnalysis() throws java.io.IOException
+    private int[] runClusteringAnalysis() throws java.io.IOException
     {
-        DBSCAN dbscan = new DBSCAN();
-        Bag clusters = dbscan.getPopulations(
-            hc.reproducingPlants_vf.getGeometries(), Parameters.EPSILON, Parameters.MIN_POINTS);
+        ReproducingPopulation plants = hc.reproducingPlants;
+        int n = plants.numLocations();
+        int[] clusters;
+        if (params.incrementalClustering && Parameters.MIN_POINTS <= 1)
+        {
+            // only apply this year's changes, by plot
+            if (incrementalClusterer == null)
+            {
+                incrementalClusterer = new IncrementalClusterer(hc.gridWidth,
+                    hc.redRaster.getPixelWidth(), Parameters.EPSILON);
+            }
+            int[] cells = new int[n];
+            for (int i = 0; i < n; i++)
+            {
+                cells[i] = hc.redRaster.toY(plants.getY(i)) * hc.gridWidth + hc.redRaster.toX(plants.getX(i));
+            }
+            clusters = incrementalClusterer.update(cells, plants.getCounts(), n);
+        }
+        else
+        {
+            double[] xs = plants.getXs();
+            double[] ys = plants.getYs();
+            int[] counts = plants.getCounts(); // aggregated plants stand together at their spot's center
+
+            /* with MIN_POINTS of 1, textbook DBSCAN is just connected components, which are far cheaper */
+            clusters = (params.textbookDBSCAN && Parameters.MIN_POINTS <= 1)
+                ? new ConnectedComponents(xs, ys, counts, n, Parameters.EPSILON).getClusterSizes()
+                : new DBSCAN(xs, ys, counts, n, Parameters.EPSILON, Parameters.MIN_POINTS,
+                    params.textbookDBSCAN).getClusterSizes();
+        }
 
-        if (Parameters.VERBOSE)
+        if (params.verbose)
         {
-            if (clusters.size() > 0)
+            if (clusters.length > 0)
             {
-                System.out.println("Number of clusters: " + clusters.size());
+                System.out.println("Number of clusters: " + clusters.length);
                 System.out.print("clusterPops: [");
             }
             else
@@ -269,42 +276,34 @@ class Environment implements Steppable
                 System.out.println("clusterPops: [0]");
             }
 
-            for (int i = 0, s = clusters.size(); i < s; i++)
+            for (int i = 0, s = clusters.length; i < s; i++)
             {
-                Bag cluster = (Bag) clusters.get(i);
-                clusterStatsPw.println(year+","+cluster.size());
-                if (i < clusters.size()-1)
+                clusterStatsPw.println(year+","+clusters[i]);
+                if (i < clusters.length-1)
                 {
-                    System.out.print(cluster.size() + ", ");
+                    System.out.print(clusters[i] + ", ");
                 }
                 else
                 {
-                    System.out.println(cluster.size() + "]");
+                    System.out.println(clusters[i] + "]");
                 }
             }
             clusterStatsPw.flush();
         }
 
-        Bag clusterCounts = new Bag();
-        for (int i = 0, s = clusters.size(); i < s; i++)
-        {
-            Bag c = (Bag) clusters.get(i);
-            clusterCounts.add(c.size());
-        }
-
-        return clusterCounts;
+        return clusters;
     }
 
     private void printCoords()
     {       
         try {
             File file = new File(coordPath, "PLANT_COORDS.csv" + 
-                Parameters.SIM_TAG + "." + year);
+                params.simTag + "." + year);
             BufferedWriter output = new BufferedWriter(new FileWriter(file));
-            for (int i = 0, s = hc.reproducingPlants_vf.getGeometries().size(); i < s; i++)
+            for (int i = 0, s = hc.reproducingPlants.numLocations(); i < s; i++)
             {
-                MasonGeometry mg = (MasonGeometry) hc.reproducingPlants_vf.getGeometries().get(i);
-                output.write(mg.getGeometry().getCoordinate().x + ", " + mg.getGeometry().getCoordinate().y + "\n");
+                for (int j = 0, c = hc.reproducingPlants.getCount(i); j < c; j++)
+                    output.write(hc.reproducingPlants.getX(i) + ", " + hc.reproducingPlants.getY(i) + "\n");
             }
             output.close();
         } catch ( IOException e ) {
@@ -312,6 +311,33 @@ class Environment implements Steppable
         }   
     }
 
+    /**
+     * Writes every plot's count for every year since it was instantiated, the
+     * plots numbered in the order they were.
+     */
+    private void printPlotHistories()
+    {
+        try {
+            new File(params.plotHistoryFile).delete();
+            PrintWriter pw = new PrintWriter(new BufferedWriter(
+                new FileWriter(params.plotHistoryFile)));
+            pw.println("\"plot\",\"color\",\"year\",\"count\"");
+            for (int i = 0, s = hc.plots.size(); i < s; i++)
+            {
+                Plot p = hc.plots.plotAt(i);
+                int[] counts = p.getHistoryCounts();
+                for (int y = p.getInstantiationYear(); y < counts.length; y++)
+                {
+                    pw.println(i+","+p.getColor()+","+y+","+counts[y]);
+                }
+            }
+            pw.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Couldn't write plot histories!");
+        }
+    }
+
 /* ------------------------
  * Keeping track of the date.
  * ------------------------ */
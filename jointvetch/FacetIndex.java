@@ -0,0 +1,137 @@
+package jointvetch;
+
+import java.util.List;
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jts.geom.util.LinearComponentExtracter;
+import com.vividsolutions.jts.index.strtree.ItemBoundable;
+import com.vividsolutions.jts.index.strtree.ItemDistance;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jts.operation.distance.GeometryLocation;
+
+/**
+ * A spatial index over the line segments ("facets") of a lineal geometry, such as
+ * the river network or the tidal boundary. It is built once and answers nearest-location
+ * queries in logarithmic time, rather than scanning every facet as DistanceOp does.
+ * Facets at the same distance, as at a shared vertex or a junction, are decided as
+ * DistanceOp decides them: the first component line wins, then its first segment.
+ */
+class FacetIndex
+{
+    private final STRtree tree = new STRtree();
+
+    /* one segment of one component line */
+    private static class Facet
+    {
+        final LineString line;
+        final int lineIndex, segIndex;
+        final LineSegment segment;
+
+        Facet(LineString line, int lineIndex, int segIndex, Coordinate p0, Coordinate p1)
+        {
+            this.line = line;
+            this.lineIndex = lineIndex;
+            this.segIndex = segIndex;
+            this.segment = new LineSegment(p0, p1);
+        }
+
+        /* computed as DistanceOp computes it, so that the same facets tie */
+        double distance(Coordinate c)
+        {
+            return CGAlgorithms.distancePointLine(c, segment.p0, segment.p1);
+        }
+
+        /* whether DistanceOp would reach this facet before the other */
+        boolean precedes(Facet other)
+        {
+            return (lineIndex != other.lineIndex) ? lineIndex < other.lineIndex : segIndex < other.segIndex;
+        }
+
+        GeometryLocation locationOf(Coordinate c)
+        {
+            return new GeometryLocation(line, segIndex, segment.closestPoint(c));
+        }
+    }
+
+    private static final ItemDistance FACET_TO_COORDINATE = new ItemDistance()
+    {
+        public double distance(ItemBoundable a, ItemBoundable b)
+        {
+            Object i1 = a.getItem();
+            Object i2 = b.getItem();
+            Facet f = (Facet) ( (i1 instanceof Facet) ? i1 : i2 );
+            Coordinate c = (Coordinate) ( (i1 instanceof Facet) ? i2 : i1 );
+            return f.distance(c);
+        }
+    };
+
+    /**
+     * @param g Any geometry; each of its linear components (LineStrings and
+     * LinearRings) is broken into segments and indexed. The components become
+     * the geometry components of the returned GeometryLocations.
+     */
+    FacetIndex(Geometry g)
+    {
+        List<?> lines = LinearComponentExtracter.getLines(g);
+        for (int i = 0, s = lines.size(); i < s; i++)
+        {
+            LineString line = (LineString) lines.get(i);
+            Coordinate[] coords = line.getCoordinates();
+            for (int j = 0; j < coords.length - 1; j++)
+            {
+                tree.insert(new Envelope(coords[j], coords[j+1]), new Facet(line, i, j, coords[j], coords[j+1]));
+            }
+        }
+        tree.build(); // build eagerly, so that queries never modify the tree
+    }
+
+    /**
+     * Returns the nearest location on the indexed geometry to the coordinate, or
+     * null if nothing is strictly closer than maxDistance. Only facets whose envelopes
+     * fall within maxDistance of the coordinate are ever examined.
+     */
+    GeometryLocation nearestLocation(Coordinate c, double maxDistance)
+    {
+        Envelope search = new Envelope(c);
+        search.expandBy(maxDistance);
+        Facet nearest = nearest(tree.query(search), c, null, maxDistance);
+        return (nearest == null) ? null : nearest.locationOf(c);
+    }
+
+    /**
+     * Returns the nearest location on the indexed geometry to the coordinate,
+     * however far away it is.
+     */
+    GeometryLocation nearestLocation(Coordinate c)
+    {
+        Facet nearest = (Facet) tree.nearestNeighbour(new Envelope(c), c, FACET_TO_COORDINATE);
+
+        /* the tree returns whichever nearest facet it meets first, so look again for
+            any others just as near */
+        double nearestDistance = nearest.distance(c);
+        Envelope search = new Envelope(c);
+        search.expandBy(nearestDistance);
+        nearest = nearest(tree.query(search), c, nearest, nearestDistance);
+        return nearest.locationOf(c);
+    }
+
+    /**
+     * Returns the candidate nearest to the coordinate, or the given nearest facet if
+     * no candidate is closer than nearestDistance; candidates only as close win if they
+     * precede it.
+     */
+    private static Facet nearest(List<?> candidates, Coordinate c, Facet nearest, double nearestDistance)
+    {
+        for (int i = 0, s = candidates.size(); i < s; i++)
+        {
+            Facet f = (Facet) candidates.get(i);
+            double d = f.distance(c);
+            if (d < nearestDistance || (d == nearestDistance && nearest != null && f.precedes(nearest)))
+            {
+                nearest = f;
+                nearestDistance = d;
+            }
+        }
+        return nearest;
+    }
+}
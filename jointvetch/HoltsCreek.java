@@ -2,17 +2,10 @@ package jointvetch;
 
 import java.io.*;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
-import java.net.URL;
 import sim.engine.*;
-import sim.io.geo.*;
 import sim.util.*;
-import sim.util.geo.GeomPlanarGraph;
-import sim.util.geo.MasonGeometry;
-import sim.field.geo.GeomVectorField;
-import sim.field.geo.GeomGridField;
-import sim.field.geo.GeomGridField.GridDataType;
-import sim.field.grid.ObjectGrid2D;
+import sim.util.distribution.Binomial;
+import sim.util.distribution.Gamma;
 import com.vividsolutions.jts.geom.*;
 
 /**
@@ -20,117 +13,100 @@ import com.vividsolutions.jts.geom.*;
  */
 class HoltsCreek extends SimState
 {
-    private static HoltsCreek instance;
-    static long seed;
-
-    /* data files */
-    private static final String pampoint = "/data/Pampoint/Pampoint_All.shp"; // initial plants (points)
-    private static final String flowline = "/data/riverFlow/riverFlow.shp"; // river network (lines)
-    private static final String waterbody = "/data/Waterbody/waterbody.shp"; // tidal marsh (geometries)
-    private static final String rasterFile = "data/waterbody_raster/waterbody_raster.asc.gz"; /* goodness */
-    private static final String seedFloatTimesFile = "data/seedFloatTimes.txt";
-    private static final String CACHED_RASTER = "data/waterbody_raster/buttslow.obj";
-
-    GeometryFactory factory = new GeometryFactory();
-    private Envelope MBR = new Envelope();
-
-    /* plant geometries */
-    GeomVectorField initialPlants_vf = new GeomVectorField();
-    GeomVectorField reproducingPlants_vf = new GeomVectorField(); // used by DBSCAN
-
-    /* geographic geometries, the network of rivers, and tidally inundated landmass */
-    GeomVectorField riverLines_vf = new GeomVectorField();
-    GeomVectorField tidal_vf = new GeomVectorField();
-    GeomVectorField boundary_vf = new GeomVectorField();
-    GeomPlanarGraph riverNetwork = new GeomPlanarGraph(); // the directed graph/network
-
-    /* competition & carrying capacity rasters */
-    GeomGridField redRaster_gf = new GeomGridField();
-    GeomGridField plotGrid_gf = new GeomGridField();
-    int gridHeight, gridWidth;
-
-    /* geometries for distance detection */
-    MultiLineString river_mls;
-    MultiPolygon tidal_mp;
-    Geometry tidalBoundary_g;
+    /* this run's seed, parameters and environment; each run has its own, see Ensemble */
+    final long seed;
+    final Parameters params;
+    Environment environment;
+
+    /* the GIS data, shared by every run in the JVM; the fields below are its own */
+    final Landscape landscape;
+    final GeometryFactory factory;
+    final CompetitionRaster redRaster;
+    final int gridHeight, gridWidth;
+    final RiverGraph riverGraph;
+    final Map<Geometry, Integer> riverLineIds;
+    final FacetIndex tidalBoundary_fi;
+    final AreaIndex tidal_ai;
+    final EntryMap entryMap;
+    final List<Integer> seedFloatTimes;
+
+    /* where this year's reproducing plants are, used for clustering */
+    ReproducingPopulation reproducingPlants;
+
+    /* plots, only where plants have been; see PlotStore */
+    PlotStore plots;
+
+    /* the plants' yearly events, see Plant */
+    PlantPhase seedlingSurvival, reproduction;
+
+    /* dropped and floating seeds */
+    Hydrochory hydrochory;
+    Gamma seedDropDistro; // see Plant
+
+    /* for plot-level aggregates, see nextBinomial() */
+    private final Binomial binomialDistro;
+
+    /* where each run's summary line is printed, see Environment */
+    PrintStream results = System.out;
     
-    /* independent variables */
-    private final double adjustmentFactor;
-    private final double stochMax;
-    private final double implantationRate;
-    private final boolean hydrochoryBool;
-
-    /* seed floatation data, see methods */
-    int[] seedFloatTimes = new int[499];
-
     static final int RIVER_RASTER_COLOR = -9999;
 
     private static final double PLANT_DROP_DIST_MAX = 2.0; // meters
 
-    /* creating the instance */
-    static synchronized HoltsCreek instance(long seed, String[] args)
-    {
-        if (instance == null)
-        {
-            instance = new HoltsCreek(seed, args);
-            Parameters.initParams();
-        }
-        return instance;
-    }
-
-    /* getting the instance */
-    static synchronized HoltsCreek instance()
-    {
-        if (instance == null) throw new AssertionError();
-            
-        return instance;
-    }
-
-    private HoltsCreek(long seed, String[] args)
+    HoltsCreek(long seed, String[] args, Landscape landscape)
     {     
         super(seed);
         this.seed = seed;
+
+        this.landscape = landscape;
+        factory = landscape.factory;
+        redRaster = landscape.redRaster;
+        gridHeight = landscape.gridHeight;
+        gridWidth = landscape.gridWidth;
+        riverGraph = landscape.riverGraph;
+        riverLineIds = landscape.riverLineIds;
+        tidalBoundary_fi = landscape.tidalBoundary_fi;
+        tidal_ai = landscape.tidal_ai;
+        entryMap = landscape.entryMap;
+        seedFloatTimes = landscape.seedFloatTimes;
+        seedDropDistro = Plant.newSeedDropDistro(random);
+        binomialDistro = new Binomial(1, 0.5, random);
         
-        stochMax = Double.parseDouble(args[0]);
-        hydrochoryBool = Boolean.parseBoolean(args[1]);
-        implantationRate = Double.parseDouble(args[2]);
-        adjustmentFactor = Double.parseDouble(args[3]);
+        Parameters p = null;
         try {
-            for (int i=0; i<args.length; i++) {
-                if (args[i].equals("-verbose")) {
-                    Parameters.VERBOSE = true;
-                }
-                if (args[i].equals("-tag")) {
-                    Parameters.SIM_TAG = Integer.valueOf(args[i+1]);
-                }
-                if (args[i].equals("-years")) {
-                    Parameters.MAX_YEAR_COUNT = Integer.valueOf(args[i+1]);
-                }
-            }
+            p = new Parameters(args);
         } catch (Exception e) {
             e.printStackTrace();
             printUsage();
             System.exit(1);
         }
+        params = p;
         System.out.println("Seed:"+seed);
-        System.out.println("stochMax = " + stochMax);
-        System.out.println("hydrochoryBool = " + hydrochoryBool);
-        System.out.println("implantationRate = " + implantationRate);
-        System.out.println("adjustmentFactor = " + adjustmentFactor);
-        System.out.println("Parameters.VERBOSE = " + Parameters.VERBOSE);
-        System.out.println("Parameters.SIM_TAG = " + Parameters.SIM_TAG);
-        System.out.println("Parameters.MAX_YEAR_COUNT = " +
-            Parameters.MAX_YEAR_COUNT);
-
-        assert (stochMax >= 1.0) : "Stochasticity must be 1 or greater.";
+        System.out.println("stochMax = " + params.stochMax);
+        System.out.println("hydrochoryBool = " + params.hydrochoryBool);
+        System.out.println("implantationRate = " + params.implantationRate);
+        System.out.println("adjustmentFactor = " + params.adjustmentFactor);
+        System.out.println("verbose = " + params.verbose);
+        System.out.println("simTag = " + params.simTag);
+        System.out.println("maxYearCount = " + params.maxYearCount);
+        System.out.println("textbookDBSCAN = " + params.textbookDBSCAN);
+        System.out.println("incrementalClustering = " + params.incrementalClustering);
+        System.out.println("plotHistory = " + params.plotHistory);
+        System.out.println("orderedPhases = " + params.orderedPhases);
+        System.out.println("aggregate = " + params.aggregate);
+        System.out.println("hybridThreshold = " + params.hybridThreshold);
+        System.out.println("maxPopulationCount = " + params.maxPopulationCount);
+
+        assert (params.stochMax >= 1.0) : "Stochasticity must be 1 or greater.";
     }
 
     private static void printUsage() {
         System.err.println(
             "Usage: HoltsCreek stochMax hydrochoryBool implantationRate" +
             " adjustmentFactor [-verbose] [-quiet]" +
-            " [-tag simtagInt] [-years maxYears]" +
-            " [-seed seed].");
+            " [-tag simtagInt] [-years maxYears] [-textbookDBSCAN] [-incremental]" +
+            " [-history] [-ordered] [-aggregate] [-hybrid threshold]" +
+            " [-maxpop maxPopulation] [-seed seed].");
     }
 
     public static void main(String[] args) throws Exception
@@ -139,11 +115,12 @@ class HoltsCreek extends SimState
             printUsage();
             System.exit(1);
         }
+        final Landscape landscape = Landscape.load();
         doLoop(new MakesSimState()
         {
             public SimState newInstance(long seed, String[] args)
             {
-                return HoltsCreek.instance(seed, args);
+                return new HoltsCreek(seed, args, landscape);
             }
             public Class simulationClass()
             {
@@ -156,138 +133,24 @@ class HoltsCreek extends SimState
     public void start()
     {
         super.start();
-        readData();
-        populateGeometryCollections();
+        setupPlots();
+        environment = new Environment(this);
+        seedlingSurvival = new PlantPhase(this, Plant.seedlingSurvivalDate);
+        reproduction = new PlantPhase(this, Plant.reproductionDate);
+        hydrochory = new Hydrochory(this);
         setupInitialPlantPopulations();
         setupEnvironment();
     }
 
     /**
-     * Read in the requisite data, do preliminary indexing of rivers and tidal geometries,
-     * lay the groundwork for geometry related calculations and visual effects.
+     * Start with no plots, and no reproducing plants.
+     * Plots share the competition raster's cells.
      */
-    private void readData()
-    {
-        try {
-            initialPlants_vf.clear();
-            reproducingPlants_vf.clear();
-
-            riverLines_vf.clear();
-            tidal_vf.clear();
-            boundary_vf.clear();
-
-            redRaster_gf.clear();
-            plotGrid_gf.clear();
-
-            // joint-vetch Populations
-            URL pampnt = HoltsCreek.class.getResource(pampoint);
-            ShapeFileImporter.read(pampnt, initialPlants_vf);
-            MBR.expandToInclude(initialPlants_vf.getMBR());
-
-            // river network
-            URL riverFlow = HoltsCreek.class.getResource(flowline);
-            ShapeFileImporter.read(riverFlow, riverLines_vf);
-            MBR.expandToInclude(riverLines_vf.getMBR());
-
-            // tidal areas
-            URL tidalArea = HoltsCreek.class.getResource(waterbody);
-            ShapeFileImporter.read(tidalArea, tidal_vf);
-            MBR.expandToInclude(tidal_vf.getMBR());
-
-            // set up the river's network
-            riverNetwork.createFromGeomField(riverLines_vf);
-
-            // red raster / competition map
-            if (new File(CACHED_RASTER).exists()) {
-                System.out.println("(Using cached raster object.)");
-                java.io.ObjectInputStream ois = 
-                    new java.io.ObjectInputStream(
-                        new java.io.FileInputStream(CACHED_RASTER));
-                redRaster_gf = (GeomGridField) ois.readObject();
-            } else {
-                System.out.println("No cached raster object." +
-                    " Paying the piper with one-time startup cost.\n" +
-                    " Be patient...");
-                GZIPInputStream cis = new GZIPInputStream(
-                    new java.io.FileInputStream(rasterFile));
-                ArcInfoASCGridImporter.read(cis, GridDataType.INTEGER, 
-                    redRaster_gf);
-                cis.close();
-                System.out.println("Writing cached raster object...");
-                java.io.ObjectOutputStream oos = 
-                    new java.io.ObjectOutputStream(
-                        new java.io.FileOutputStream(CACHED_RASTER));
-                oos.writeObject(redRaster_gf);
-                oos.close();
-                System.out.println("...done.");
-            }
-            MBR.expandToInclude(redRaster_gf.getMBR());
-            gridHeight = redRaster_gf.getGridHeight();
-            gridWidth = redRaster_gf.getGridWidth();
-
-            // plot grid
-            ObjectGrid2D plotGrid = new ObjectGrid2D(gridWidth, gridHeight);
-            plotGrid_gf.setGrid(plotGrid);
-            MBR.expandToInclude(plotGrid_gf.getMBR());
-
-            // set MBR for all GeomVectorFields
-            initialPlants_vf.setMBR(MBR);
-            reproducingPlants_vf.setMBR(MBR);
-
-            riverLines_vf.setMBR(MBR);
-            tidal_vf.setMBR(MBR);
-            boundary_vf.setMBR(MBR);
-            redRaster_gf.setMBR(MBR);
-            plotGrid_gf.setMBR(MBR);
-
-            /* ------------------------
-            * Pixel height has to be set or else the raster grid will be off alignment.
-            * ------------------------ */
-            redRaster_gf.setPixelHeight(1.0); 
-            redRaster_gf.setPixelWidth(1.0);
-
-            plotGrid_gf.setPixelHeight(1.0);
-            plotGrid_gf.setPixelWidth(1.0);
-
-            // Read in Dr. Griffith's seed floatation data, ceiling it to whole integers.
-            Scanner s = new Scanner(new File(seedFloatTimesFile));
-            int index = 0;
-            while (s.hasNextDouble())
-            {
-                seedFloatTimes[index++] = (int) Math.ceil( s.nextDouble() );
-            }
-            s.close();
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
-    private void populateGeometryCollections()
+    private void setupPlots()
     {
-        /* Insert the riverLines_vf geometries into a GeometryCollection (MultiLineString)
-            for distance sorting, see Plant.java */
-        Bag r_bag = riverLines_vf.getGeometries();
-        LineString[] r_arr = new LineString[r_bag.size()];
-        for (int i = 0, s = r_bag.size(); i < s; i++)
-        {
-            r_arr[i] = (LineString) ( (MasonGeometry) r_bag.get(i) ).getGeometry();
-        }
-        river_mls = new MultiLineString(r_arr, factory);
+        reproducingPlants = new ReproducingPopulation();
 
-        /* Insert the waterBody geometries into a GeometryCollection (MultiPolygon) for
-            distance sorting, see Plant.java */
-        Bag t_bag = tidal_vf.getGeometries();
-        Polygon[] t_arr = new Polygon[t_bag.size()];
-        for (int i = 0, s = t_bag.size(); i < s; i++)
-        {
-            t_arr[i] = (Polygon) ( (MasonGeometry) t_bag.get(i) ).getGeometry();
-        }
-        tidal_mp = new MultiPolygon(t_arr, factory);
-
-        tidalBoundary_g = tidal_mp.getBoundary(); /* Take the boundary of these geometries so
-            we can find how far the seed is to the river in Plant.java. */
-        boundary_vf.addGeometry(new MasonGeometry(tidalBoundary_g));
+        plots = new PlotStore(gridWidth, gridHeight);
     }
 
     /**
@@ -296,21 +159,31 @@ class HoltsCreek extends SimState
      */
     private void setupInitialPlantPopulations()
     {
-        Bag jointvetch_Bag = new Bag(initialPlants_vf.getGeometries());
-        for (int i = 0, s = jointvetch_Bag.size(); i < s; i++)
+        for (int i = 0, s = landscape.getNumPopulations(); i < s; i++)
         {
-            MasonGeometry curPopulation = (MasonGeometry) jointvetch_Bag.get(i);
-            int popSize = curPopulation.getIntegerAttribute("POPSIZE");
+            int popSize = landscape.getPopulationSize(i);
             for (int j = 0; j < popSize; j++)
             {
                 double plantAngle = random.nextDouble() * 2 * Math.PI;
                 double plantDist = random.nextDouble() * PLANT_DROP_DIST_MAX;
                 double xOffset = plantDist * Math.cos(plantAngle);
                 double yOffset = plantDist * Math.sin(plantAngle);
-                Coordinate plantLoc = (Coordinate) curPopulation.getGeometry().getCoordinate().clone();
+                Coordinate plantLoc = landscape.getPopulationLocation(i);
                 plantLoc.x += xOffset;
                 plantLoc.y += yOffset;
-                Plant p = new Plant(new MasonGeometry(factory.createPoint(plantLoc)), true);
+                if (params.aggregate)
+                {
+                    int rx = redRaster.toX(plantLoc.x);
+                    int ry = redRaster.toY(plantLoc.y);
+                    Plot plot = environment.getPlot(rx, ry);
+                    plot.registerNewPlants(1);
+                    plot.getAdults().add(DropKernel.spotOf(redRaster.toColumn(plantLoc.x) - rx,
+                        redRaster.toRow(plantLoc.y) - ry), 1);
+                }
+                else
+                {
+                    Plant p = new Plant(this, plantLoc.x, plantLoc.y, true);
+                }
             }
         }
     }
@@ -322,27 +195,21 @@ class HoltsCreek extends SimState
      */
     private void setupEnvironment()
     {
-        schedule.scheduleOnce(Environment.instance().getClockTimeForNextNewYearDate(), Environment.instance());
-    }
-
-    public void finish() {
-        super.finish();
-    }
-
-    double getStochMax() {
-        return stochMax;
-    }
-
-    double getAdjustmentFactor() {
-        return adjustmentFactor;
+        schedule.scheduleOnce(environment.getClockTimeForNextNewYearDate(), environment);
     }
 
-    double getImplantationRate() {
-        return implantationRate;
+    /**
+     * @return how many of n trials succeed, each with probability p.
+     */
+    int nextBinomial(int n, double p)
+    {
+        if (n == 0 || p <= 0) return 0;
+        if (p >= 1) return n;
+        return binomialDistro.nextInt(n, p);
     }
 
-    boolean getHydrochoryBool() {
-        return hydrochoryBool;
+    public void finish() {
+        super.finish();
     }
 
 }
@@ -0,0 +1,464 @@
+package jointvetch;
+
+import java.util.Arrays;
+import java.util.List;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jts.operation.distance.GeometryLocation;
+
+/**
+ * The joint-vetch seeds of a simulation, from the moment they drop. Of importance is the logic pertaining
+ * to hydrochory, or seed travel via water. In this area, the water movement is heavily influenced by the
+ * tides. Each seed, at the end of its existence, will either implant or die.
+ *
+ * Seeds that implant as soon as they drop become Plants right away. Seeds that float are held in one flat
+ * list of parallel primitive arrays (one slot per seed) rather than as one object per seed. This agent is
+ * scheduled once an hour for as long as any seed is floating, and steps them all; the schedule never sees
+ * the individual seeds.
+ */
+class Hydrochory implements Steppable
+{
+    private final HoltsCreek hc;
+    private final Environment e;
+
+    /* hydrochory parameters */
+    private static final int TIDAL_PERIOD = 13; /* hours */
+    private static final double TIDAL_AMPLITUDE = 769.5; /* meters per hour */
+    private static final double TIDAL_OFFSET = 13.5; /* meters per hour */
+
+    /* A seed starts floating at any time, then floats in whole hours, and the tide repeats every
+        2 * TIDAL_PERIOD hours. So the tide a seed meets k hours after it starts at t is
+        sin(w t + w k) = sin(w t) cos(w k) + cos(w t) sin(w k), with w = PI / TIDAL_PERIOD: each seed
+        keeps the sine and cosine of its start, and the cosines and sines of the whole hours of the
+        cycle are one shared table. */
+    static final int TIDAL_CYCLE = 2 * TIDAL_PERIOD; /* hours */
+    private static final double[] TIDAL_COS = new double[TIDAL_CYCLE];
+    private static final double[] TIDAL_SIN = new double[TIDAL_CYCLE];
+
+    static
+    {
+        for (int k = 0; k < TIDAL_CYCLE; k++)
+        {
+            TIDAL_COS[k] = Math.cos( k*Math.PI/TIDAL_PERIOD );
+            TIDAL_SIN[k] = Math.sin( k*Math.PI/TIDAL_PERIOD );
+        }
+    }
+
+    private boolean scheduled = false;
+
+    /* for Cohorts without hydrochory, the chance a seed that would float implants instead */
+    private final double aggregateImplantationProb;
+
+    /* floating seeds, one slot per seed, packed into slots 0 to size-1 */
+    private int size = 0;
+    private int[] line = new int[64]; // river line the seed floats along, see Landscape.riverLineIds
+    private double[] currentIndex = new double[64]; // position along that line; see RiverGraph for coordinates
+    private int[] floatTimer = new int[64]; // counter to maxFloatTime
+    private int[] maxFloatTime = new int[64]; // how long the seed will survive in the river
+    private double[] nextTime = new double[64]; // clock time of the seed's next hour of floating
+    private double[] startSin = new double[64]; // sine of the tide's phase when the seed started floating
+    private double[] startCos = new double[64]; // and its cosine
+
+    Hydrochory(HoltsCreek hc)
+    {
+        this.hc = hc;
+        e = hc.environment;
+        aggregateImplantationProb = (hc.params.usesCohorts() && !hc.params.hydrochoryBool)
+            ? computeAggregateImplantationProb() : 0;
+    }
+
+    /**
+     * Drop a seed. This may result in one of two outcomes: either it implants immediately
+     * where it is, or it enters the closest river, joining the floating seeds.
+     * @param dropLocation The coordinate pair that indicates where, on land, the seed dropped.
+     * @param entryLocation The point on the river where the seed will begin its hydrochory journey,
+     * along with the LineString it lies on; or null, if the seed is too far from the river.
+     */
+    void drop(Coordinate dropLocation, GeometryLocation entryLocation)
+    {
+        if (entryLocation != null)
+        {
+            int rx = hc.redRaster.toX(dropLocation.x);
+            int ry = hc.redRaster.toY(dropLocation.y);
+            int rasterColor = hc.redRaster.getColor(rx, ry);
+
+            if (hc.random.nextBoolean(Parameters.HYDROCHORY_PROB) || rasterColor == HoltsCreek.RIVER_RASTER_COLOR)
+            {
+                int floatTime = pickMaxFloatTime();
+
+                if (hc.params.hydrochoryBool)
+                {
+                    enterRiver(entryLocation, floatTime);
+                }
+                else
+                {
+                    // aggregate implantation check
+                    double b = implantationProb(floatTime);
+                    assert (b < 1 && b >= 0) : "Aggregate implantation check probability is nonsensical.";
+                    if (hc.random.nextBoolean(b))
+                    {
+                        implant(dropLocation.x, dropLocation.y);
+                    }
+                }
+            }
+            else implant(dropLocation.x, dropLocation.y);
+        }
+        else implant(dropLocation.x, dropLocation.y); // We're implanting right where we initially dropped.
+    }
+
+    /**
+     * Drop n seeds, all in the given spot (see DropKernel) of the plot at (x, y), as drop()
+     * would drop each of them, but with one binomial draw per outcome rather than draws
+     * for each seed. Only the seeds that float are followed one by one. The seedlings
+     * join the plot's Cohort, or in hybrid mode may become Plants, anywhere in the spot.
+     */
+    void dropAll(int x, int y, int spot, int n, GeometryLocation entryLocation)
+    {
+        int local = n;
+        if (entryLocation != null)
+        {
+            int floating = (hc.redRaster.getColor(x, y) == HoltsCreek.RIVER_RASTER_COLOR)
+                ? n : hc.nextBinomial(n, Parameters.HYDROCHORY_PROB);
+            local -= floating;
+            if (hc.params.hydrochoryBool)
+            {
+                for (int i = 0; i < floating; i++)
+                {
+                    enterRiver(entryLocation, pickMaxFloatTime());
+                }
+            }
+            else
+            {
+                local += hc.nextBinomial(floating, aggregateImplantationProb);
+            }
+        }
+
+        int survivors = hc.nextBinomial(local, Parameters.WINTER_SURVIVAL_RATE);
+        if (survivors == 0) return;
+        Plot plot = e.getPlot(x, y);
+        int plants = plot.admitPlants(survivors);
+        for (int i = 0; i < plants; i++)
+        {
+            double u = (spot % DropKernel.SPOTS + hc.random.nextDouble()) / DropKernel.SPOTS;
+            double v = (spot / DropKernel.SPOTS + hc.random.nextDouble()) / DropKernel.SPOTS;
+            Plant p = new Plant(hc, hc.redRaster.columnToX(x + u), hc.redRaster.rowToY(y + v), false);
+        }
+        plot.getSeedlings().add(spot, survivors - plants);
+    }
+
+    /**
+     * Drop the seed into the closest river line, at the closest river point.
+     */
+    private void enterRiver(GeometryLocation entryLocation, int floatTime)
+    {
+        int l = hc.riverLineIds.get(entryLocation.getGeometryComponent());
+        Coordinate entry = entryLocation.getCoordinate();
+        int s = add(l, hc.riverGraph.getIndex(l, entryLocation.getSegmentIndex(), entry), floatTime);
+        nextTime[s] = hc.schedule.getTime() + hc.random.nextDouble() * TIDAL_PERIOD * 2;
+        startSin[s] = Math.sin( nextTime[s]*Math.PI/TIDAL_PERIOD );
+        startCos[s] = Math.cos( nextTime[s]*Math.PI/TIDAL_PERIOD );
+
+        if (!scheduled)
+        {
+            hc.schedule.scheduleOnce(Math.floor(hc.schedule.getTime()) + 1, this);
+            scheduled = true;
+        }
+    }
+
+    private int add(int l, double index, int floatTime)
+    {
+        if (size == line.length)
+        {
+            int capacity = size * 2;
+            line = Arrays.copyOf(line, capacity);
+            currentIndex = Arrays.copyOf(currentIndex, capacity);
+            floatTimer = Arrays.copyOf(floatTimer, capacity);
+            maxFloatTime = Arrays.copyOf(maxFloatTime, capacity);
+            nextTime = Arrays.copyOf(nextTime, capacity);
+            startSin = Arrays.copyOf(startSin, capacity);
+            startCos = Arrays.copyOf(startCos, capacity);
+        }
+        line[size] = l;
+        currentIndex[size] = index;
+        floatTimer[size] = 0;
+        maxFloatTime[size] = floatTime;
+        return size++;
+    }
+
+    /**
+     * Seed s is done floating; move the last seed into its slot.
+     */
+    private void remove(int s)
+    {
+        int last = --size;
+        line[s] = line[last];
+        currentIndex[s] = currentIndex[last];
+        floatTimer[s] = floatTimer[last];
+        maxFloatTime[s] = maxFloatTime[last];
+        nextTime[s] = nextTime[last];
+        startSin[s] = startSin[last];
+        startCos[s] = startCos[last];
+    }
+
+    private int pickMaxFloatTime()
+    {
+        List<Integer> times = hc.seedFloatTimes;
+        int n = hc.random.nextInt(times.size());
+        int maxFloatTime = times.get(n);
+        while (n != 0 && (maxFloatTime - times.get(n - 1)) == 0)
+        {
+            n--;
+        }
+        if (n != 0 && (maxFloatTime - times.get(n - 1)) > 6)
+        {
+            /* correct nightly accumulation of dead seeds */
+            maxFloatTime = hc.random.nextInt(times.get(n) - times.get(n - 1)) + times.get(n - 1);
+        }
+        return maxFloatTime;
+    }
+
+    /**
+     * @return the chance that the aggregate implantation check in drop() passes, over
+     * every float time pickMaxFloatTime() could pick, weighted by its chance.
+     */
+    private double computeAggregateImplantationProb()
+    {
+        List<Integer> times = hc.seedFloatTimes;
+        double sum = 0;
+        for (int n = 0; n < times.size(); n++)
+        {
+            int m = n;
+            while (m != 0 && (times.get(n) - times.get(m - 1)) == 0)
+            {
+                m--;
+            }
+            if (m != 0 && (times.get(n) - times.get(m - 1)) > 6)
+            {
+                double b = 0;
+                for (int t = times.get(m - 1); t < times.get(m); t++) b += implantationProb(t);
+                sum += b / (times.get(m) - times.get(m - 1));
+            }
+            else sum += implantationProb(times.get(n));
+        }
+        return sum / times.size();
+    }
+
+    private double implantationProb(int floatTime)
+    {
+        return 1-Math.pow( (1-hc.params.implantationRate), (double) floatTime );
+    }
+
+    /**
+     * Step every seed whose next hour of floating has come. Each seed keeps its own
+     * (fractional) clock, so it sees the same tide it would if stepped on its own.
+     */
+    public void step(SimState state)
+    {
+        double now = hc.schedule.getTime();
+        for (int s = 0; s < size; )
+        {
+            if (nextTime[s] <= now && !hydrochory(s))
+            {
+                remove(s); // the last seed now sits in slot s, and gets its turn next
+            }
+            else s++;
+        }
+
+        if (size > 0)
+        {
+            hc.schedule.scheduleOnce(now + 1, this);
+        }
+        else
+        {
+            scheduled = false;
+        }
+    }
+
+    /**
+     * An exciting description of hydrochory!
+     * @return false once the seed has implanted or died.
+     */
+    private boolean hydrochory(int s)
+    {
+        if (hc.random.nextBoolean(hc.params.implantationRate))
+        {
+            Coordinate riverCoord = hc.riverGraph.getCoordinate(line[s], currentIndex[s]);
+
+            /* Continue the line from the seed's current location on the river to the nearest marsh border.
+                Project this line into the marsh and drop the seed within 4m of the marsh edge. If the seed
+                is already in the marsh, there is no such line, so drop it in any direction. */
+            Coordinate waterbodyCoord = riverCoord;
+            double dx = 0, dy = 0, len = 0;
+            if (!hc.tidal_ai.covers(riverCoord))
+            {
+                waterbodyCoord = hc.tidalBoundary_fi.nearestLocation(riverCoord).getCoordinate();
+                dx = waterbodyCoord.x - riverCoord.x;
+                dy = waterbodyCoord.y - riverCoord.y;
+                len = Math.sqrt(dx * dx + dy * dy);
+            }
+
+            double ux, uy; // unit vector along the line
+            if (len == 0) // in the marsh, or right on its edge
+            {
+                double angle = hc.random.nextDouble() * 2 * Math.PI;
+                ux = Math.cos(angle);
+                uy = Math.sin(angle);
+            }
+            else
+            {
+                ux = dx / len;
+                uy = dy / len;
+            }
+
+            double dist = hc.random.nextDouble() * Parameters.IMPLANTATION_MAXIMUM_DISTANCE; // uniform dist from 0 - 4m
+            implant(waterbodyCoord.x + dist * ux, waterbodyCoord.y + dist * uy);
+            return false;
+        }
+        else if (floatTimer[s] <= maxFloatTime[s]) // keep on hydrochorying
+        {
+            double distanceThisHour = tidalRate(startSin[s], startCos[s], floatTimer[s] % TIDAL_CYCLE);
+            double distanceTraveledThisHour = 0; // an absolute value
+            double distanceToTravel = distanceToTravel(distanceThisHour);
+            boolean deadEnd = false;
+
+            /* because each edge is a different length and the seed must travel a predetermined distance each hour,
+             *   each seed will continue moving up/down a given edge until it reaches a terminus. Then it will pick
+             *   a new edge (one that travels in the same direction) and transition onto it. */
+            while (distanceTraveledThisHour < distanceToTravel && !deadEnd)
+            {
+                int direction = (distanceThisHour >= 0) ? 1 : -1; // upstream or downstream
+                double startIndex = 0.0;
+                double endIndex = hc.riverGraph.getLength(line[s]);
+                if (!arrivedAtJunction(direction, currentIndex[s], startIndex, endIndex))
+                {
+                    double myStartIndex = currentIndex[s];
+
+                    // going from end -> start (upstream)
+                    if (distanceThisHour < 0)
+                    {
+                        currentIndex[s] = currentIndex[s] + (distanceThisHour + distanceTraveledThisHour); // (-) + (+)
+                        if (currentIndex[s] < startIndex) {
+                            currentIndex[s] = startIndex;
+                        }
+                    }
+
+                    // going from start -> end (downstream)
+                    else if (distanceThisHour > 0)
+                    {
+                        currentIndex[s] = currentIndex[s] + (distanceThisHour - distanceTraveledThisHour);
+                        if (currentIndex[s] > endIndex) {
+                            currentIndex[s] = endIndex;
+                        }
+                    }
+
+                    distanceTraveledThisHour = distanceTraveledThisHour + Math.abs(currentIndex[s]-myStartIndex);
+                }
+                else
+                {
+                    deadEnd = !findNewPath(s, direction);
+                }
+            }
+
+            floatTimer[s]++;
+            nextTime[s] += 1;
+            return true;
+        }
+        else return false; // the seed is now dead.
+    }
+
+    /**
+     * The seed has successfully implanted in the soil.
+     */
+    private void implant(double ix, double iy)
+    {
+        int rx = hc.redRaster.toX(ix);
+        int ry = hc.redRaster.toY(iy);
+
+        if (rx < hc.gridWidth && rx >= 0 && ry < hc.gridHeight && ry >= 0) // very rare OOB exception
+        {
+            if (hc.random.nextBoolean(Parameters.WINTER_SURVIVAL_RATE))
+            {
+                Plot plot = e.getPlot(rx, ry);
+                if (plot.admitPlants(1) == 1)
+                {
+                    Plant p = new Plant(hc, ix, iy, false);
+                }
+                else
+                {
+                    int spot = DropKernel.spotOf(hc.redRaster.toColumn(ix) - rx, hc.redRaster.toRow(iy) - ry);
+                    plot.getSeedlings().add(spot, 1);
+                }
+            }
+
+            // implicit seed death
+        }
+    }
+
+    /**
+     * If the direction is downstream (negative) and the seed is at the end of an edge, it should continue to another edge.
+     * Likewise a seed could go upstream and need to continue on when it gets to the "beginning" of an edge. Put another way,
+     * edges inherently go downstream.
+     * @return true if at junction, false if not.
+     */
+    private static boolean arrivedAtJunction(double direction, double currentIndex, double startIndex, double endIndex)
+    {
+        return (direction > 0 && currentIndex == endIndex) || (direction < 0 && currentIndex == startIndex);
+    }
+
+    /**
+     * Moves seed s onto a new river line leaving the junction it has reached, in the direction it is going.
+     * The seed can only float upstream if the direction is negative and downstream if positive, so it
+     * only picks among those lines. (Go down the main stream rather than another tributary.)
+     * @return false if there is no such line (a dead end).
+     */
+    private boolean findNewPath(int s, int direction)
+    {
+        // find the "node" we're on
+        int junction = hc.riverGraph.getJunction(line[s], direction);
+        if (junction == RiverGraph.NO_NODE) throw new AssertionError();
+
+        int numPaths = hc.riverGraph.getNumPaths(junction, direction);
+        if (numPaths > 0)
+        {
+            // pick an edge at random and start moving along it
+            int l = hc.riverGraph.getPath(junction, direction, hc.random.nextInt(numPaths));
+            line[s] = l;
+            currentIndex[s] = hc.riverGraph.getEntryIndex(l, junction);
+            return true;
+        }
+        else
+        {
+            return false;
+        }
+    }
+
+    /**
+     * This function returns a rate (in meters per hour). Multiplied by one hour timesteps,
+     * we can see how far the seed went in one hour. See methods for details.
+     * @param time time(t) the seed has been moving
+     * @return The rate at time(t) the seed is moving.
+     */
+    static double tidalRateFunction(double time) {
+        return TIDAL_AMPLITUDE * Math.sin( time*Math.PI/TIDAL_PERIOD ) + TIDAL_OFFSET;
+    }
+
+    /**
+     * @return tidalRateFunction() for a seed whose start has the given sine and cosine,
+     * hour k of the tidal cycle after its start.
+     */
+    static double tidalRate(double startSin, double startCos, int k)
+    {
+        return TIDAL_AMPLITUDE * (startSin*TIDAL_COS[k] + startCos*TIDAL_SIN[k]) + TIDAL_OFFSET;
+    }
+
+    /**
+     * @return how far a seed travels in an hour at the given rate.
+     */
+    static double distanceToTravel(double rate)
+    {
+        final double SCALE = 1000000.0;
+        return (Math.round( Math.abs(rate)*SCALE )/SCALE)-1; // why -1? refresh this
+    }
+
+}
@@ -0,0 +1,213 @@
+package jointvetch;
+
+import java.util.Arrays;
+import sim.util.IntBag;
+
+/**
+ * Single-linkage clustering of reproducing plants at plot resolution, carried over
+ * from one year to the next. Plants are counted per occupied plot and plots whose
+ * centers lie within epsilon of each other are connected. Each year only the
+ * changes are applied: clusters that lost a plot are split apart and relinked,
+ * newly occupied plots are linked in, and all other clusters are left untouched.
+ * Because distances are measured between plot centers rather than between the
+ * plants themselves, results can differ slightly from ConnectedComponents.
+ */
+class IncrementalClusterer
+{
+    private final int width; // of the plot grid, for unpacking cell indices
+    private final double cellSize;
+    private final double epsilon;
+    private final int binSize; // in cells, at least epsilon wide
+    private final int binCols;
+
+    private final CellMap slotOfCell = new CellMap();
+    private final CellMap headOfBin = new CellMap();
+
+    /* per slot; a free slot has cell == CellMap.NONE */
+    private int numSlots;
+    private int[] cell = new int[0];
+    private int[] count = new int[0];
+    private int[] parent = new int[0];
+    private int[] nextInBin = new int[0];
+    private int[] prevInBin = new int[0];
+    private final IntBag freeSlots = new IntBag();
+
+    IncrementalClusterer(int width, double cellSize, double epsilon)
+    {
+        this.width = width;
+        this.cellSize = cellSize;
+        this.epsilon = epsilon;
+        binSize = Math.max(1, (int) Math.ceil(epsilon / cellSize));
+        binCols = width / binSize + 1;
+    }
+
+    /**
+     * Brings the clusters up to date with this year's reproducing plants.
+     * @param cells The packed plot index (y * width + x) of each plant.
+     * @return the number of plants in each cluster.
+     */
+    int[] update(int[] cells, int n)
+    {
+        return update(cells, null, n);
+    }
+
+    /**
+     * Brings the clusters up to date with this year's reproducing plants, some of
+     * which may be counted together (see Cohort).
+     * @param plants The number of plants at each cell, or null if just one.
+     */
+    int[] update(int[] cells, int[] plants, int n)
+    {
+        CellMap counts = new CellMap(n);
+        for (int i = 0; i < n; i++) counts.add(cells[i], (plants == null) ? 1 : plants[i]);
+
+        /* find the clusters that lose a plot */
+        int[] root = new int[numSlots];
+        boolean[] dirty = new boolean[numSlots];
+        for (int s = 0; s < numSlots; s++)
+        {
+            if (cell[s] == CellMap.NONE) continue;
+            root[s] = find(s);
+            if (!counts.containsKey(cell[s])) dirty[root[s]] = true;
+        }
+
+        /* split them apart, drop the empty plots, and refresh the counts of the rest */
+        IntBag relink = new IntBag();
+        for (int s = 0; s < numSlots; s++)
+        {
+            if (cell[s] == CellMap.NONE) continue;
+            int c = counts.get(cell[s], 0);
+            if (dirty[root[s]])
+            {
+                parent[s] = s;
+                if (c > 0) relink.add(s);
+            }
+            if (c == 0) free(s);
+            else count[s] = c;
+        }
+
+        /* newly occupied plots */
+        for (int i = 0, cap = counts.capacity(); i < cap; i++)
+        {
+            int key = counts.keyAt(i);
+            if (key != CellMap.NONE && !slotOfCell.containsKey(key))
+            {
+                relink.add(allocate(key, counts.valueAt(i)));
+            }
+        }
+
+        IntBag neighbors = new IntBag();
+        for (int k = 0, s = relink.size(); k < s; k++)
+        {
+            int slot = relink.get(k);
+            neighbors.clear();
+            neighborsOf(slot, neighbors);
+            for (int j = 0, t = neighbors.size(); j < t; j++)
+            {
+                union(slot, neighbors.get(j));
+            }
+        }
+
+        int[] total = new int[numSlots];
+        for (int s = 0; s < numSlots; s++)
+        {
+            if (cell[s] != CellMap.NONE) total[find(s)] += count[s];
+        }
+        IntBag clusterSizes = new IntBag();
+        for (int s = 0; s < numSlots; s++)
+        {
+            if (cell[s] != CellMap.NONE && parent[s] == s) clusterSizes.add(total[s]);
+        }
+        return clusterSizes.toArray();
+    }
+
+    private void neighborsOf(int slot, IntBag result)
+    {
+        int x = cell[slot] % width;
+        int y = cell[slot] / width;
+        int bx = x / binSize;
+        int by = y / binSize;
+        double epsilonSq = epsilon * epsilon;
+        for (int gy = Math.max(0, by - 1); gy <= by + 1; gy++)
+        {
+            for (int gx = Math.max(0, bx - 1); gx <= bx + 1 && gx < binCols; gx++)
+            {
+                for (int t = headOfBin.get(gy * binCols + gx, CellMap.NONE); t != CellMap.NONE; t = nextInBin[t])
+                {
+                    double dx = (cell[t] % width - x) * cellSize;
+                    double dy = (cell[t] / width - y) * cellSize;
+                    if (t != slot && dx * dx + dy * dy <= epsilonSq) result.add(t);
+                }
+            }
+        }
+    }
+
+    private int binOf(int c)
+    {
+        return (c / width / binSize) * binCols + (c % width) / binSize;
+    }
+
+    private int allocate(int c, int n)
+    {
+        int s;
+        if (freeSlots.size() > 0)
+        {
+            s = freeSlots.pop();
+        }
+        else
+        {
+            s = numSlots++;
+            if (s == cell.length)
+            {
+                int capacity = Math.max(16, cell.length * 2);
+                cell = Arrays.copyOf(cell, capacity);
+                count = Arrays.copyOf(count, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                nextInBin = Arrays.copyOf(nextInBin, capacity);
+                prevInBin = Arrays.copyOf(prevInBin, capacity);
+            }
+        }
+        cell[s] = c;
+        count[s] = n;
+        parent[s] = s;
+        slotOfCell.put(c, s);
+
+        int bin = binOf(c);
+        int head = headOfBin.get(bin, CellMap.NONE);
+        prevInBin[s] = CellMap.NONE;
+        nextInBin[s] = head;
+        if (head != CellMap.NONE) prevInBin[head] = s;
+        headOfBin.put(bin, s);
+        return s;
+    }
+
+    private void free(int s)
+    {
+        int bin = binOf(cell[s]);
+        if (prevInBin[s] != CellMap.NONE) nextInBin[prevInBin[s]] = nextInBin[s];
+        else if (nextInBin[s] != CellMap.NONE) headOfBin.put(bin, nextInBin[s]);
+        else headOfBin.remove(bin);
+        if (nextInBin[s] != CellMap.NONE) prevInBin[nextInBin[s]] = prevInBin[s];
+
+        slotOfCell.remove(cell[s]);
+        cell[s] = CellMap.NONE;
+        freeSlots.add(s);
+    }
+
+    private int find(int i)
+    {
+        while (parent[i] != i)
+        {
+            parent[i] = parent[parent[i]]; // path halving
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private void union(int a, int b)
+    {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra != rb) parent[rb] = ra;
+    }
+}
@@ -0,0 +1,222 @@
+package jointvetch;
+
+import java.io.*;
+import java.util.*;
+import java.net.URL;
+import sim.io.geo.*;
+import sim.util.*;
+import sim.util.geo.GeomPlanarGraph;
+import sim.util.geo.MasonGeometry;
+import sim.field.geo.GeomVectorField;
+import sim.field.geo.GeomGridField.GridDataType;
+import com.vividsolutions.jts.geom.*;
+
+/**
+ * The GIS data of Holts Creek: initial plant populations, the river network, the tidal
+ * marsh, the competition raster and the seed floatation data, along with the indexes
+ * built over them. It is loaded once and shared by every HoltsCreek run in the JVM,
+ * however many run at once (see Ensemble).
+ *
+ * A Landscape is immutable once constructed: all of its fields are final, nothing
+ * reachable from them is written after loading, and the indexes are built eagerly
+ * so queries never modify them. The shapefile fields and planar graph that are only
+ * needed to build it are not kept.
+ */
+class Landscape
+{
+    /* data files */
+    private static final String pampoint = "/data/Pampoint/Pampoint_All.shp"; // initial plants (points)
+    private static final String flowline = "/data/riverFlow/riverFlow.shp"; // river network (lines)
+    private static final String waterbody = "/data/Waterbody/waterbody.shp"; // tidal marsh (geometries)
+    private static final String rasterFile = "data/waterbody_raster/waterbody_raster.asc.gz"; /* goodness */
+    private static final String seedFloatTimesFile = "data/seedFloatTimes.txt";
+    private static final String CACHED_RASTER = "data/waterbody_raster/waterbody_raster.bin";
+    private static final String CACHED_ENTRY_MAP = "data/waterbody_raster/entrymap.bin";
+
+    final GeometryFactory factory = new GeometryFactory();
+    private final Envelope MBR = new Envelope(); // of all the data
+
+    /* initial plant populations, as parallel arrays */
+    private final Coordinate[] populationLocations;
+    private final int[] populationSizes;
+
+    /* the river network, compiled for floating seeds */
+    final RiverGraph riverGraph;
+
+    /* competition raster, one byte per cell; never written after loading */
+    final CompetitionRaster redRaster;
+    final int gridHeight, gridWidth;
+
+    /* prebuilt indexes over the river and tidal boundary, see Plant.java */
+    final FacetIndex river_fi;
+    final FacetIndex tidalBoundary_fi;
+    final AreaIndex tidal_ai; // which points lie in the marsh, see Hydrochory.java
+
+    /* each plot's river entry point, precomputed from the indexes above */
+    final EntryMap entryMap;
+
+    /* the ids of the components of the river, for floating seeds; see Hydrochory */
+    final Map<Geometry, Integer> riverLineIds;
+
+    /* seed floatation data, see methods */
+    final List<Integer> seedFloatTimes;
+
+    /**
+     * Read in the requisite data, do preliminary indexing of rivers and tidal geometries,
+     * and lay the groundwork for geometry related calculations.
+     */
+    private Landscape() throws Exception
+    {
+        // joint-vetch Populations
+        GeomVectorField initialPlants_vf = new GeomVectorField();
+        URL pampnt = Landscape.class.getResource(pampoint);
+        ShapeFileImporter.read(pampnt, initialPlants_vf);
+        MBR.expandToInclude(initialPlants_vf.getMBR());
+
+        // river network
+        GeomVectorField riverLines_vf = new GeomVectorField();
+        URL riverFlow = Landscape.class.getResource(flowline);
+        ShapeFileImporter.read(riverFlow, riverLines_vf);
+        MBR.expandToInclude(riverLines_vf.getMBR());
+
+        // tidal areas
+        GeomVectorField tidal_vf = new GeomVectorField();
+        URL tidalArea = Landscape.class.getResource(waterbody);
+        ShapeFileImporter.read(tidalArea, tidal_vf);
+        MBR.expandToInclude(tidal_vf.getMBR());
+
+        // set up the river's network
+        GeomPlanarGraph riverNetwork = new GeomPlanarGraph();
+        riverNetwork.createFromGeomField(riverLines_vf);
+
+        // red raster / competition map
+        CompetitionRaster raster = readRaster();
+        MBR.expandToInclude(raster.getMBR());
+        gridHeight = raster.height;
+        gridWidth = raster.width;
+
+        /* ------------------------
+        * Pixel height has to be set or else the raster grid will be off alignment.
+        * ------------------------ */
+        redRaster = raster.withBounds(new Envelope(MBR), 1.0, 1.0);
+
+        // Read in Dr. Griffith's seed floatation data, ceiling it to whole integers.
+        Scanner s = new Scanner(new File(seedFloatTimesFile));
+        List<Integer> floatTimes = new ArrayList<Integer>();
+        while (s.hasNextDouble())
+        {
+            floatTimes.add((int) Math.ceil( s.nextDouble() ));
+        }
+        s.close();
+        seedFloatTimes = Collections.unmodifiableList(floatTimes);
+
+        Bag p_bag = initialPlants_vf.getGeometries();
+        populationLocations = new Coordinate[p_bag.size()];
+        populationSizes = new int[p_bag.size()];
+        for (int i = 0, n = p_bag.size(); i < n; i++)
+        {
+            MasonGeometry population = (MasonGeometry) p_bag.get(i);
+            populationLocations[i] = (Coordinate) population.getGeometry().getCoordinate().clone();
+            populationSizes[i] = population.getIntegerAttribute("POPSIZE");
+        }
+
+        /* Insert the riverLines_vf geometries into a GeometryCollection (MultiLineString)
+            for distance sorting, see Plant.java */
+        Bag r_bag = riverLines_vf.getGeometries();
+        LineString[] r_arr = new LineString[r_bag.size()];
+        for (int i = 0, n = r_bag.size(); i < n; i++)
+        {
+            r_arr[i] = (LineString) ( (MasonGeometry) r_bag.get(i) ).getGeometry();
+        }
+        MultiLineString river_mls = new MultiLineString(r_arr, factory);
+
+        IdentityHashMap<Geometry, Integer> lineIds = new IdentityHashMap<Geometry, Integer>();
+        for (int i = 0; i < r_arr.length; i++)
+        {
+            lineIds.put(r_arr[i], i);
+        }
+        riverLineIds = Collections.unmodifiableMap(lineIds);
+        riverGraph = new RiverGraph(riverNetwork, river_mls);
+
+        /* Insert the waterBody geometries into a GeometryCollection (MultiPolygon) for
+            distance sorting, see Plant.java */
+        Bag t_bag = tidal_vf.getGeometries();
+        Polygon[] t_arr = new Polygon[t_bag.size()];
+        for (int i = 0, n = t_bag.size(); i < n; i++)
+        {
+            t_arr[i] = (Polygon) ( (MasonGeometry) t_bag.get(i) ).getGeometry();
+        }
+        MultiPolygon tidal_mp = new MultiPolygon(t_arr, factory);
+
+        Geometry tidalBoundary_g = tidal_mp.getBoundary(); /* Take the boundary of these geometries so
+            we can find how far the seed is to the river in Plant.java. */
+
+        /* Index the river and boundary segments once, so each plant's search for
+            its river entry point doesn't scan every facet. */
+        river_fi = new FacetIndex(river_mls);
+        tidalBoundary_fi = new FacetIndex(tidalBoundary_g);
+        tidal_ai = new AreaIndex(tidal_mp);
+
+        entryMap = EntryMap.load(CACHED_ENTRY_MAP, this, river_mls, tidalBoundary_g,
+            Plant.MAX_DISTANCE_TO_STREAM_EDGE);
+    }
+
+    /**
+     * Loads the landscape, or exits if any of the data can't be read.
+     */
+    static Landscape load()
+    {
+        try {
+            return new Landscape();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("Couldn't load the landscape!");
+            System.exit(1);
+            return null;
+        }
+    }
+
+    private static CompetitionRaster readRaster() throws Exception
+    {
+        File cache = new File(CACHED_RASTER);
+        if (cache.exists()) {
+            CompetitionRaster raster = RasterCache.read(cache);
+            if (raster != null) {
+                System.out.println("(Using cached raster.)");
+                return raster;
+            }
+        }
+        System.out.println("No cached raster." +
+            " Paying the piper with one-time startup cost.\n" +
+            " Be patient...");
+        CompetitionRaster raster = CompetitionRaster.pack(
+            AsciiGridReader.read(rasterFile, GridDataType.INTEGER));
+        System.out.println("Writing cached raster...");
+        try {
+            RasterCache.write(cache, raster);
+            System.out.println("...done.");
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Couldn't write cached raster.");
+        }
+        return raster;
+    }
+
+    int getNumPopulations()
+    {
+        return populationSizes.length;
+    }
+
+    /**
+     * @return a copy of the location of the i'th initial population.
+     */
+    Coordinate getPopulationLocation(int i)
+    {
+        return (Coordinate) populationLocations[i].clone();
+    }
+
+    int getPopulationSize(int i)
+    {
+        return populationSizes[i];
+    }
+}
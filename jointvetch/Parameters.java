@@ -1,12 +1,17 @@
 package jointvetch;
 
+/**
+ * The parameters of one simulation. The independent variables and options are read
+ * from the command line by each run (see HoltsCreek); the rest are constants shared
+ * by every run.
+ */
 class Parameters
 {
     // independent variables
-    static double stochMax;
-    static boolean hydrochoryBool;
-    static double implantationRate;
-    static double adjustmentFactor;
+    final double stochMax;
+    final boolean hydrochoryBool;
+    final double implantationRate;
+    final double adjustmentFactor;
 
     // for first warmUp years, adjustment factor does not exist
     static final int warmUp = 3;
@@ -20,17 +25,30 @@ class Parameters
     static final double IMPLANTATION_MAXIMUM_DISTANCE = 4.0;
 
     // environment's parameters
-    static int SIM_TAG;
-    static int MAX_YEAR_COUNT = 100;
+    int simTag;
+    int maxYearCount = 100;
     static final int MAX_POPULATION_COUNT = 150000;
-    static final int DBSCAN_CUTOFF = 25000; // too big a runtime for clustering analysis
-    static boolean VERBOSE = false;
-    static String SIM_STATS_FILE = "/tmp/sim_stats.csv";
-    static String CLUSTER_STATS_FILE = "/tmp/cluster_stats.csv";
+    int maxPopulationCount = MAX_POPULATION_COUNT; // a run ends once it has more reproducing plants
+    boolean verbose = false;
+    final String simStatsFile;
+    final String clusterStatsFile;
+    boolean plotHistory = false; // keep every plot's yearly counts, and write them out at the end
+    final String plotHistoryFile;
 
     // DBSCAN implementation
     static final double EPSILON = 25.0;
     static final int MIN_POINTS = 1;
+    boolean textbookDBSCAN = false; // grow clusters through their core points
+    boolean incrementalClustering = false; // cluster plots, reusing last year's clusters
+
+    // step each phase's plants in the order they entered it, rather than shuffled; see PlantPhase
+    boolean orderedPhases = false;
+
+    // keep plants as counts per plot and life stage, rather than one by one; see Cohort
+    boolean aggregate = false;
+
+    // or only in plots that get more than this many seedlings a year, if not 0; see Plot.admitPlants()
+    int hybridThreshold = 0;
 
     // plot parameters
     static final int CARRYING_CAPACITY = 50; // per m^2 "plot"
@@ -83,19 +101,58 @@ class Parameters
         0.00024, 0.00024, 0.00024, 0.00024, 0.00024, 0.00024, 0.00024, 0.00024, 
         0.00024, 0.00024, 0.00024, 0.00024 };
 
-    static void initParams()
+    /**
+     * @param args stochMax hydrochoryBool implantationRate adjustmentFactor, then any options
+     * @throws RuntimeException if an argument can't be parsed
+     */
+    Parameters(String[] args)
     {
-        stochMax = HoltsCreek.instance().getStochMax();
-        hydrochoryBool = HoltsCreek.instance().getHydrochoryBool();
-        implantationRate = HoltsCreek.instance().getImplantationRate();
-        adjustmentFactor = HoltsCreek.instance().getAdjustmentFactor();
-        SIM_STATS_FILE = "/tmp/sim_stats.csv" + SIM_TAG;
-        CLUSTER_STATS_FILE = "/tmp/cluster_stats.csv" + SIM_TAG;
-    }
-
-    // Suppress default constructor for noninstantiability
-    private Parameters() {
-        throw new AssertionError();
+        stochMax = Double.parseDouble(args[0]);
+        hydrochoryBool = Boolean.parseBoolean(args[1]);
+        implantationRate = Double.parseDouble(args[2]);
+        adjustmentFactor = Double.parseDouble(args[3]);
+        for (int i=0; i<args.length; i++) {
+            if (args[i].equals("-verbose")) {
+                verbose = true;
+            }
+            if (args[i].equals("-tag")) {
+                simTag = Integer.valueOf(args[i+1]);
+            }
+            if (args[i].equals("-years")) {
+                maxYearCount = Integer.valueOf(args[i+1]);
+            }
+            if (args[i].equals("-textbookDBSCAN")) {
+                textbookDBSCAN = true;
+            }
+            if (args[i].equals("-incremental")) {
+                incrementalClustering = true;
+            }
+            if (args[i].equals("-history")) {
+                plotHistory = true;
+            }
+            if (args[i].equals("-ordered")) {
+                orderedPhases = true;
+            }
+            if (args[i].equals("-aggregate")) {
+                aggregate = true;
+            }
+            if (args[i].equals("-hybrid")) {
+                hybridThreshold = Integer.valueOf(args[i+1]);
+            }
+            if (args[i].equals("-maxpop")) {
+                maxPopulationCount = Integer.valueOf(args[i+1]);
+            }
+        }
+        if (incrementalClustering && !textbookDBSCAN)
+            throw new IllegalArgumentException(
+                "-incremental carries connected components over, so needs -textbookDBSCAN.");
+        if (aggregate && hybridThreshold > 0)
+            throw new IllegalArgumentException("Choose either -aggregate or -hybrid.");
+        if (hybridThreshold < 0)
+            throw new IllegalArgumentException("The hybrid threshold can't be negative.");
+        simStatsFile = "/tmp/sim_stats.csv" + simTag;
+        clusterStatsFile = "/tmp/cluster_stats.csv" + simTag;
+        plotHistoryFile = "/tmp/plot_history.csv" + simTag;
     }
 
     static double getSurvRate(int color)
@@ -112,9 +169,36 @@ class Parameters
         return (color != HoltsCreek.RIVER_RASTER_COLOR) ? FEC_QEXP[color] : 0;
     }
 
-    static double getAdjustment() 
+    /**
+     * @return the options that affect a run's results, besides its seed and independent
+     * variables, always written the same way and in the same order, such as
+     * "-years 100 -maxpop 150000 -aggregate". See ResultStore.
+     */
+    String getRunOptions()
+    {
+        StringBuilder s = new StringBuilder();
+        s.append("-years ").append(maxYearCount);
+        s.append(" -maxpop ").append(maxPopulationCount);
+        if (textbookDBSCAN) s.append(" -textbookDBSCAN");
+        if (incrementalClustering) s.append(" -incremental");
+        if (plotHistory) s.append(" -history");
+        if (orderedPhases) s.append(" -ordered");
+        if (aggregate) s.append(" -aggregate");
+        if (hybridThreshold > 0) s.append(" -hybrid ").append(hybridThreshold);
+        return s.toString();
+    }
+
+    /**
+     * @return whether any plants may be kept as counts rather than one by one.
+     */
+    boolean usesCohorts()
+    {
+        return aggregate || hybridThreshold > 0;
+    }
+
+    double getAdjustment(int year)
     {
-        if (Environment.instance().getYear() < warmUp) return 1.0;
+        if (year < warmUp) return 1.0;
 
         return adjustmentFactor;
     }
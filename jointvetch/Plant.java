@@ -1,10 +1,9 @@
 package jointvetch;
 
+import ec.util.MersenneTwisterFast;
 import sim.engine.*;
 import sim.util.distribution.Gamma;
-import sim.util.geo.MasonGeometry;
 import com.vividsolutions.jts.geom.*;
-import com.vividsolutions.jts.operation.distance.DistanceOp;
 import com.vividsolutions.jts.operation.distance.GeometryLocation;
 
 /**
@@ -18,79 +17,78 @@ import com.vividsolutions.jts.operation.distance.GeometryLocation;
  */
 class Plant implements Steppable
 {
-    private HoltsCreek hc;
-    private Environment e;
+    private final HoltsCreek hc;
+    private final Environment e;
 
-    private final MasonGeometry location;
+    /* where the plant is */
+    private final double x, y;
     private final Plot myPlot;
 
     enum LifeStage { DEAD, IMPLANTED, ADULT }
     private LifeStage stage;
 
-    private static final double MAX_DISTANCE_TO_STREAM_EDGE = 4.0; /* meters */
+    static final double MAX_DISTANCE_TO_STREAM_EDGE = 4.0; /* meters */
     
     /* seed drop data */
-    private static final double SEED_DROP_DIST_MEAN = 0.3;
-    private static final double SEED_DROP_DIST_SD = 0.25;
-    private static final Gamma gammaDistro;
+    static final double SEED_DROP_DIST_MEAN = 0.3;
+    static final double SEED_DROP_DIST_SD = 0.25;
+    static final double MAX_SEED_DROP_DIST = 1.5;
 
-    /* dates */
-    private static final Environment.Date seedlingSurvivalDate =
+    /* dates, on which each stage's plants are stepped by a PlantPhase */
+    static final Environment.Date seedlingSurvivalDate =
         new Environment.Date(Environment.Month.SEP, 28);
 
-    private static final Environment.Date reproductionDate =
+    static final Environment.Date reproductionDate =
         new Environment.Date(Environment.Month.OCT, 1);
 
-    static
+    /**
+     * @return the distribution of seed drop distances, drawing from the given run's generator.
+     */
+    static Gamma newSeedDropDistro(MersenneTwisterFast random)
     {
         double seedDropDistVar = SEED_DROP_DIST_SD * SEED_DROP_DIST_SD;
         double seedDropDistAlpha = SEED_DROP_DIST_MEAN * SEED_DROP_DIST_MEAN / seedDropDistVar;
         double seedDropDistLambda = SEED_DROP_DIST_MEAN / seedDropDistVar;
-        gammaDistro = new Gamma(seedDropDistAlpha, seedDropDistLambda, HoltsCreek.instance().random);
+        return new Gamma(seedDropDistAlpha, seedDropDistLambda, random);
     }
 
     /**
-     * Each Adult object <i>has</i> a MasonGeometry that represents its
-     * location. This is given to it when it's created from the
-     * jointvetch_vectorField. After the initial construction of the first
+     * Each plant is located at a point, given to it when it's created from
+     * the initial populations. After the initial construction of the first
      * step's adults, new adults are created by seeds, according to the
      * vital rates.
      */
-    Plant(MasonGeometry seed_location, boolean isFirstGen)
+    Plant(HoltsCreek hc, double x, double y, boolean isFirstGen)
     {
-        hc = HoltsCreek.instance();
-        e = Environment.instance();
+        this.hc = hc;
+        e = hc.environment;
 
-        location = seed_location;
-        int x = hc.redRaster_gf.toXCoord((Point) location.getGeometry());
-        int y = hc.redRaster_gf.toYCoord((Point) location.getGeometry());
-        
-        myPlot = e.getPlot(x, y);
+        this.x = x;
+        this.y = y;
+        myPlot = e.getPlot(hc.redRaster.toX(x), hc.redRaster.toY(y));
         if (isFirstGen) // initial plants go straight to adulthood
         {
             myPlot.registerNewPlant();
 
             stage = LifeStage.ADULT;
-            hc.schedule.scheduleOnce(e.getClockTimeForNext(reproductionDate), this);
+            hc.reproduction.add(this);
         }
         else
         {
             stage = LifeStage.IMPLANTED;
-            hc.schedule.scheduleOnce(e.getClockTimeForNext(seedlingSurvivalDate), this);
+            hc.seedlingSurvival.add(this);
         }
     }
 
     public void step(SimState state)
     {
-        hc = HoltsCreek.instance();
-
         if (stage == LifeStage.IMPLANTED)
         {
             if (hc.random.nextBoolean(myPlot.getSurvivalProb()))
             {
                 stage = LifeStage.ADULT;
                 myPlot.registerNewPlant();
-                hc.schedule.scheduleOnce(e.getClockTimeForNext(reproductionDate), this);
+                hc.reproduction.add(this);
             }
             else
             {
@@ -102,7 +100,7 @@ class Plant implements Steppable
             if (hc.random.nextBoolean(myPlot.getCarryingCapacityAdjustment()))
             {
                 reproduce();
-                hc.reproducingPlants_vf.addGeometry(location); // will be cleared on Dec 31.
+                hc.reproducingPlants.add(x, y); // will be cleared on Dec 31.
             }
             else
             {
@@ -114,54 +112,39 @@ class Plant implements Steppable
     }
 
     /**
-     * The seeds created in this function are going to float around for, probably, at most 5 days. By then
-     * they'll all either be dead or germinated plants, having entered the constructor and then rescheduled themselves.
+     * The seeds created in this function are dropped into Hydrochory and are going to float around for, probably,
+     * at most 5 days. By then they'll all either be dead or germinated plants.
      */
     private void reproduce()
     {
-        GeometryLocation entryLocation = null;
-        DistanceOp toRiver = new DistanceOp(hc.river_mls, location.getGeometry());
-
-        if (toRiver.distance() < MAX_DISTANCE_TO_STREAM_EDGE)
-        {
-            entryLocation = toRiver.nearestLocations()[0];
-        }
-        else
-        {
-            // moreover, if the seed drops near to the waterbody edge (wider parts of the river)
-            DistanceOp toEdge = new DistanceOp( hc.tidalBoundary_g, location.getGeometry() );
-            if (toEdge.distance() < MAX_DISTANCE_TO_STREAM_EDGE)
-            {
-                DistanceOp edgeToRiver = new DistanceOp( hc.river_mls,
-                    hc.factory.createPoint( toEdge.nearestPoints()[0] ));
-                entryLocation = edgeToRiver.nearestLocations()[0];
-            }
-        }
+        /* where seeds enter the river depends only on the plant's plot, see EntryMap */
+        GeometryLocation entryLocation = hc.entryMap.getEntryLocation(
+            hc.redRaster.toX(x), hc.redRaster.toY(y));
         
         for (int i = 0, s = myPlot.getFecundity(); i < s; i++)
         {
             double seedAngle = hc.random.nextDouble() * 2 * Math.PI;
-            double seedDist = gammaDistro.nextDouble();
-            while (seedDist > 1.5) seedDist = gammaDistro.nextDouble();
+            double seedDist = hc.seedDropDistro.nextDouble();
+            while (seedDist > MAX_SEED_DROP_DIST) seedDist = hc.seedDropDistro.nextDouble();
             double xOffset = seedDist * Math.cos(seedAngle);
             double yOffset = seedDist * Math.sin(seedAngle);
-            Coordinate seedLoc = (Coordinate) location.getGeometry().getCoordinate().clone();
+            Coordinate seedLoc = new Coordinate(x, y);
             seedLoc.x += xOffset;
             seedLoc.y += yOffset;
 
             /* ensure that where it lands in the waterbody as well as its optional 
              *  river entry point are inside the propensity grid */
-            int waterbody_x = hc.redRaster_gf.toXCoord(seedLoc.x);
-            int waterbody_y = hc.redRaster_gf.toYCoord(seedLoc.y);
-            int river_x = (entryLocation == null) ? 0 : hc.redRaster_gf.toXCoord(entryLocation.getCoordinate().x);
-            int river_y = (entryLocation == null) ? 0 : hc.redRaster_gf.toYCoord(entryLocation.getCoordinate().y);
+            int waterbody_x = hc.redRaster.toX(seedLoc.x);
+            int waterbody_y = hc.redRaster.toY(seedLoc.y);
+            int river_x = (entryLocation == null) ? 0 : hc.redRaster.toX(entryLocation.getCoordinate().x);
+            int river_y = (entryLocation == null) ? 0 : hc.redRaster.toY(entryLocation.getCoordinate().y);
 
             if (waterbody_x < hc.gridWidth && waterbody_x >= 0 
                 && waterbody_y < hc.gridHeight && waterbody_y >= 0
                 && river_x < hc.gridWidth && river_x >= 0 
                 && river_y < hc.gridHeight && river_y >= 0) // very rare OOB exception
             {
-                MobileSeed seed = new MobileSeed(seedLoc, entryLocation); // each seed decides whether or not it will disperse.
+                hc.hydrochory.drop(seedLoc, entryLocation); // each seed decides whether or not it will disperse.
             }
         }
     }
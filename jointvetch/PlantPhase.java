@@ -0,0 +1,63 @@
+package jointvetch;
+
+import sim.engine.*;
+import sim.util.Bag;
+
+/**
+ * One of the yearly events of the plants' lifecycle, such as seedling survival on
+ * Sep 28 or reproduction on Oct 1. Rather than each Plant (or, when plants are kept
+ * as counts, each Cohort) scheduling itself, plants are added to the phase they're
+ * waiting for, and the phase is scheduled once, on its next date, to step all of them.
+ * So the Schedule holds one entry per phase rather than one per plant.
+ *
+ * As the Schedule does for Steppables due at the same time, the phase shuffles its
+ * plants before stepping them, unless Parameters.orderedPhases is set, in which case
+ * they're stepped in the order they were added. Each plant makes the same draws
+ * either way.
+ */
+class PlantPhase implements Steppable
+{
+    private final HoltsCreek hc;
+    private final Environment.Date date;
+
+    private Bag plants = new Bag(); // waiting for the next date
+    private Bag stepping = new Bag(); // being stepped now
+    private double scheduledTime = -1; // or -1 if not scheduled
+
+    PlantPhase(HoltsCreek hc, Environment.Date date)
+    {
+        this.hc = hc;
+        this.date = date;
+    }
+
+    /**
+     * Steps the plant, or the Cohort of plants, on the phase's next date.
+     */
+    void add(Steppable plant)
+    {
+        double time = hc.environment.getClockTimeForNext(date);
+        if (scheduledTime < 0)
+        {
+            hc.schedule.scheduleOnce(time, this);
+            scheduledTime = time;
+        }
+        assert (time == scheduledTime);
+        plants.add(plant);
+    }
+
+    public void step(SimState state)
+    {
+        /* plants added while stepping wait for the next date */
+        Bag due = plants;
+        plants = stepping;
+        stepping = due;
+        scheduledTime = -1;
+
+        if (!hc.params.orderedPhases) due.shuffle(hc.random);
+        for (int i = 0, s = due.numObjs; i < s; i++)
+        {
+            ( (Steppable) due.objs[i] ).step(state);
+        }
+        due.clear();
+    }
+}
@@ -1,12 +1,11 @@
 package jointvetch;
 
 import java.util.*;
-import sim.field.grid.IntGrid2D;
 
 class Plot
 {
-    private HoltsCreek hc;
-    private Environment e;
+    private final HoltsCreek hc;
+    private final Environment e;
 
     enum PlotType { UNKNOWN, TRANSIENT, MEDIOCRE, THRIVING, DEAD };
 
@@ -22,28 +21,44 @@ class Plot
     private int year;
     private final int instantiationYear;
     private final int skipYears;
-    private List<Integer> historyCounts;
+
+    /* the counts of the last JUDGEMENT_WINDOW years, the count of year i at i % JUDGEMENT_WINDOW */
+    private final int[] recentCounts = new int[JUDGEMENT_WINDOW];
+
+    /* every year's count since instantiation, only kept if Parameters.plotHistory is set */
+    private int[] historyCounts;
+    private int historyLength;
 
     private int population, culled;
     private double fecundityCompetitionModifier;
 
+    /* the plot's plants that are kept as counts, by life stage; created when first needed */
+    private final int x, y;
+    private Cohort seedlings, adults;
+
+    /* in hybrid mode, whether seedlings arriving are counted by the cohorts rather than
+        being Plants, and how many have arrived since the last year end; see admitPlants() */
+    private boolean aggregated;
+    private int arrivals;
+
     static 
     {
         CARRYING_CAPACITY_THRESHOLD = (int) (Parameters.CARRYING_CAPACITY * 0.8);
         TRANSIENT_THESHOLD = (int) (Parameters.CARRYING_CAPACITY * 0.2);
     }
 
-    Plot(int x, int y)
+    Plot(HoltsCreek hc, int x, int y)
     {
-        hc = HoltsCreek.instance();
-        e = Environment.instance();
+        this.hc = hc;
+        e = hc.environment;
+        this.x = x;
+        this.y = y;
 
-        rasterColor = ( (IntGrid2D) hc.redRaster_gf.getGrid() ).get(x,y);
+        rasterColor = hc.redRaster.getColor(x, y);
         population = 0;
 
-        historyCounts = new ArrayList<Integer>();
         instantiationYear = year = e.getYear();
-        for (int i = 0; i < year; i++) historyCounts.add(0);
+        if (hc.params.plotHistory) historyCounts = new int[8];
         skipYears = instantiationYear + JUDGEMENT_GRACE_PERIOD;
 
         survRate = Parameters.getSurvRate(rasterColor);
@@ -52,9 +67,19 @@ class Plot
 
     void registerYearEnd(int year)
     {
-        historyCounts.add(population-culled);
+        int count = population-culled;
+        recentCounts[this.year % JUDGEMENT_WINDOW] = count;
+        if (historyCounts != null)
+        {
+            if (historyLength == historyCounts.length)
+                historyCounts = Arrays.copyOf(historyCounts, historyLength * 2);
+            historyCounts[historyLength++] = count;
+        }
         population = culled = 0;
         this.year = year;
+
+        if (aggregated && arrivals < hc.params.hybridThreshold / 2) aggregated = false;
+        arrivals = 0;
     }
 
     double getCarryingCapacityAdjustment()
@@ -77,19 +102,66 @@ class Plot
         population++;
     }
 
+    void registerNewPlants(int n) {
+        population += n;
+    }
+
     void deregisterPlant() {
         culled++;
     }
 
+    void deregisterPlants(int n) {
+        culled += n;
+    }
+
+    /**
+     * Takes in n seedlings arriving at the plot, that is, seeds that have implanted and
+     * survived the winter.
+     * @return how many of them should be Plants; the rest join the plot's seedling Cohort.
+     * In aggregate mode that's none, and without either mode it's all of them. In hybrid
+     * mode (Parameters.hybridThreshold), a plot takes Plants until more than the threshold
+     * have arrived in a year, and counts every seedling from then on. It goes back to
+     * Plants after a year in which fewer than half the threshold arrived, so a plot
+     * that hovers around the threshold doesn't switch back and forth.
+     */
+    int admitPlants(int n)
+    {
+        int threshold = hc.params.hybridThreshold;
+        if (threshold == 0) return hc.params.aggregate ? 0 : n;
+
+        int admitted = aggregated ? 0 : Math.max(0, Math.min(n, threshold - arrivals));
+        arrivals += n;
+        if (arrivals > threshold) aggregated = true;
+        return admitted;
+    }
+
+    /**
+     * @return the implanted seeds waiting to become seedlings, that are kept as counts.
+     */
+    Cohort getSeedlings()
+    {
+        if (seedlings == null) seedlings = new Cohort(hc, this, x, y, Plant.LifeStage.IMPLANTED);
+        return seedlings;
+    }
+
+    /**
+     * @return the adults waiting to reproduce, that are kept as counts.
+     */
+    Cohort getAdults()
+    {
+        if (adults == null) adults = new Cohort(hc, this, x, y, Plant.LifeStage.ADULT);
+        return adults;
+    }
+
     double getSurvivalProb() {
-        double n = survRate * e.getEnvironmentalStochasticity() * Math.sqrt(Parameters.getAdjustment());
+        double n = survRate * e.getEnvironmentalStochasticity() * Math.sqrt(hc.params.getAdjustment(e.getYear()));
         
         return (n <= 1.0) ? n : 1.0;
     }
 
     int getFecundity() {
         int n = (int) (fecundity * e.getEnvironmentalStochasticity() * 
-                    Math.sqrt(Parameters.getAdjustment()) * fecundityCompetitionModifier);
+                    Math.sqrt(hc.params.getAdjustment(e.getYear())) * fecundityCompetitionModifier);
         return n;
     }
 
@@ -99,21 +171,19 @@ class Plot
         {
             return PlotType.UNKNOWN;
         }
-        else if (year != 0 && historyCounts.get(historyCounts.size()-1) == 0)
+        else if (year != 0 && recentCounts[(year-1) % JUDGEMENT_WINDOW] == 0)
         {
             return PlotType.DEAD;
         }
         else
         {
+            /* the years recorded so far are 0 to year-1, all zero before instantiation */
             double sum = 0;
             int count = 0;
-            for (int i = 0, s = historyCounts.size(); i < s; i++)
+            for (int i = Math.max(skipYears, year - JUDGEMENT_WINDOW); i < year; i++)
             {
-                if (i >= skipYears && i >= historyCounts.size() - JUDGEMENT_WINDOW) // counting the last three years
-                {
-                    sum += historyCounts.get(i);
-                    count++;
-                }
+                sum += recentCounts[i % JUDGEMENT_WINDOW];
+                count++;
             }
             double avg = sum / count;
             if (avg > CARRYING_CAPACITY_THRESHOLD)
@@ -131,9 +201,21 @@ class Plot
         }
     }
 
-    List<Integer> getHistoryCounts()
+    /**
+     * @return the count of every year so far, from year 0, or null if
+     * Parameters.plotHistory isn't set.
+     */
+    int[] getHistoryCounts()
+    {
+        if (historyCounts == null) return null;
+        int[] counts = new int[instantiationYear + historyLength];
+        System.arraycopy(historyCounts, 0, counts, instantiationYear, historyLength);
+        return counts;
+    }
+
+    int getInstantiationYear()
     {
-        return historyCounts;
+        return instantiationYear;
     }
 
     int getColor()
@@ -0,0 +1,68 @@
+package jointvetch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The plots of one run, stored sparsely. Only the cells that plants have ever been
+ * implanted in get a Plot, which is a tiny fraction of the raster, so rather than a
+ * grid the size of the raster, the plots are kept in a dense list, indexed by a
+ * CellMap from packed cell index (y * width + x) to position in the list. Plots are
+ * never removed; dead plots are still counted in the statistics, see Environment.
+ */
+class PlotStore
+{
+    private final int width, height;
+    private final CellMap indexOfCell = new CellMap(1024);
+    private final List<Plot> plots = new ArrayList<Plot>();
+
+    PlotStore(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return the plot at the cell, or null if there is none.
+     * @throws ArrayIndexOutOfBoundsException if the cell is outside the raster, as
+     * ObjectGrid2D would, rather than finding whichever cell y * width + x lands on.
+     */
+    Plot get(int x, int y)
+    {
+        int i = indexOfCell.get(cellOf(x, y), CellMap.NONE);
+        return (i == CellMap.NONE) ? null : plots.get(i);
+    }
+
+    /**
+     * Adds a plot at a cell that has none.
+     * @throws ArrayIndexOutOfBoundsException if the cell is outside the raster.
+     */
+    void add(int x, int y, Plot plot)
+    {
+        int cell = cellOf(x, y);
+        assert (!indexOfCell.containsKey(cell));
+        indexOfCell.put(cell, plots.size());
+        plots.add(plot);
+    }
+
+    private int cellOf(int x, int y)
+    {
+        if (x < 0 || x >= width || y < 0 || y >= height)
+            throw new ArrayIndexOutOfBoundsException("(" + x + ", " + y + ") is outside the " +
+                width + "x" + height + " plot grid");
+        return y * width + x;
+    }
+
+    int size()
+    {
+        return plots.size();
+    }
+
+    /**
+     * @return the i'th plot, in the order they were added.
+     */
+    Plot plotAt(int i)
+    {
+        return plots.get(i);
+    }
+}
@@ -0,0 +1,119 @@
+package jointvetch;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A binary copy of the packed competition raster, so it needn't be parsed from its
+ * ASCII grid on every start. The file is a fixed header (magic number, version, width,
+ * height, length of the color 255 mask, MBR and pixel size) followed by the raw cells,
+ * row by row, and then the mask, if any; see CompetitionRaster. When it is loaded, the
+ * cells are memory-mapped read-only and the raster reads them straight from the
+ * mapping, so they are never copied onto the heap, and every process that loads the
+ * cache shares the same pages of it.
+ */
+class RasterCache
+{
+    private static final int MAGIC = 0x4a565243; // "JVRC"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 5 * 4 + 6 * 8;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    // Suppress default constructor for noninstantiability
+    private RasterCache() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Reads the raster from the cache file.
+     * @return the raster, or null if the file isn't a raster cache of this version.
+     */
+    static CompetitionRaster read(File file) throws IOException
+    {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            if (channel.size() < HEADER_SIZE) return null;
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ORDER);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) return null;
+            int width = header.getInt();
+            int height = header.getInt();
+            int maskLength = header.getInt();
+            Envelope MBR = new Envelope(header.getDouble(), header.getDouble(),
+                header.getDouble(), header.getDouble());
+            double pixelWidth = header.getDouble();
+            double pixelHeight = header.getDouble();
+            long numCells = (long) width * height;
+            if (numCells > Integer.MAX_VALUE
+                || channel.size() != HEADER_SIZE + numCells + 8L * maskLength) return null;
+
+            /* the mapping outlives the channel */
+            MappedByteBuffer cells = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, numCells);
+
+            long[] color255 = null;
+            if (maskLength > 0)
+            {
+                color255 = new long[maskLength];
+                channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + numCells, 8L * maskLength)
+                    .order(ORDER).asLongBuffer().get(color255);
+            }
+
+            return new CompetitionRaster(width, height, cells, color255, MBR, pixelWidth, pixelHeight);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the raster to the cache file. It is written to a temporary file of its own,
+     * in the same directory, and then renamed, so no other process ever sees a partly
+     * written cache, even one building the cache at the same time.
+     */
+    static void write(File file, CompetitionRaster raster) throws IOException
+    {
+        ByteBuffer cells = raster.getCells();
+        long[] color255 = raster.getColor255Mask();
+        int maskLength = (color255 == null) ? 0 : color255.length;
+        Envelope MBR = raster.getMBR();
+
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        FileOutputStream out = new FileOutputStream(temp);
+        boolean written = false;
+        try {
+            FileChannel channel = out.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ORDER);
+            header.putInt(MAGIC).putInt(VERSION).putInt(raster.width).putInt(raster.height);
+            header.putInt(maskLength);
+            header.putDouble(MBR.getMinX()).putDouble(MBR.getMaxX());
+            header.putDouble(MBR.getMinY()).putDouble(MBR.getMaxY());
+            header.putDouble(raster.getPixelWidth()).putDouble(raster.getPixelHeight());
+            header.flip();
+            while (header.hasRemaining()) channel.write(header);
+
+            while (cells.hasRemaining()) channel.write(cells);
+
+            if (maskLength > 0)
+            {
+                ByteBuffer mask = ByteBuffer.allocate(8 * maskLength).order(ORDER);
+                mask.asLongBuffer().put(color255);
+                while (mask.hasRemaining()) channel.write(mask);
+            }
+            written = true;
+        } finally {
+            out.close();
+            if (!written) temp.delete();
+        }
+
+        if (!temp.renameTo(file))
+        {
+            temp.delete();
+            throw new IOException("Couldn't rename " + temp + " to " + file);
+        }
+    }
+}
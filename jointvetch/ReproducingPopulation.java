@@ -0,0 +1,113 @@
+package jointvetch;
+
+import java.util.Arrays;
+
+/**
+ * The locations of the plants that reproduced this year, in the order they did. The
+ * Environment counts and clusters them, and clears them on Dec 31. They're kept in
+ * growable primitive arrays, so adding one is just two stores.
+ *
+ * A location may also stand for several plants of a Cohort (see Plot.admitPlants()),
+ * so each location also has a count of plants. The counts are only kept once some
+ * location has more than one plant.
+ */
+class ReproducingPopulation
+{
+    private double[] xs = new double[1024];
+    private double[] ys = new double[1024];
+    private int[] counts; // or null while every location has one plant
+    private int numLocations;
+    private int size; // plants
+
+    void add(double x, double y)
+    {
+        add(x, y, 1);
+    }
+
+    /**
+     * Adds count plants at the same location.
+     */
+    void add(double x, double y, int count)
+    {
+        if (numLocations == xs.length)
+        {
+            xs = Arrays.copyOf(xs, numLocations * 2);
+            ys = Arrays.copyOf(ys, numLocations * 2);
+            if (counts != null) counts = Arrays.copyOf(counts, numLocations * 2);
+        }
+        if (count != 1 && counts == null)
+        {
+            counts = new int[xs.length];
+            Arrays.fill(counts, 0, numLocations, 1);
+        }
+        xs[numLocations] = x;
+        ys[numLocations] = y;
+        if (counts != null) counts[numLocations] = count;
+        numLocations++;
+        size += count;
+    }
+
+    void clear()
+    {
+        numLocations = 0;
+        size = 0;
+        counts = null;
+    }
+
+    /**
+     * @return the number of plants.
+     */
+    int size()
+    {
+        return size;
+    }
+
+    int numLocations()
+    {
+        return numLocations;
+    }
+
+    /**
+     * @return the number of plants at the i'th location.
+     */
+    int getCount(int i)
+    {
+        return (counts == null) ? 1 : counts[i];
+    }
+
+    double getX(int i)
+    {
+        return xs[i];
+    }
+
+    double getY(int i)
+    {
+        return ys[i];
+    }
+
+    /**
+     * @return the x coordinates, of which the first numLocations() are the plants'. The array
+     * is the population's own, and must not be written; it's replaced when it grows.
+     */
+    double[] getXs()
+    {
+        return xs;
+    }
+
+    /**
+     * @return the y coordinates, as getXs().
+     */
+    double[] getYs()
+    {
+        return ys;
+    }
+
+    /**
+     * @return the number of plants at each location, as getXs(), or null if every
+     * location has one.
+     */
+    int[] getCounts()
+    {
+        return counts;
+    }
+}
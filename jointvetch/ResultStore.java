@@ -0,0 +1,140 @@
+package jointvetch;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The append-only file an Ensemble writes its results to. A run's summary lines (see
+ * Environment) are appended together once it finishes, so the file only ever holds
+ * complete runs. Each line starts with the run's seed and independent variables;
+ * these, with the sweep's run options (see Parameters.getRunOptions()), make up the
+ * key of the run. When the file already exists, the keys in it are read back, so an
+ * interrupted sweep can be restarted and skip finished runs.
+ *
+ * The run options are written once, on the file's first line, as "# options: ...".
+ * A sweep with different options can't be resumed into the file: its runs would be
+ * taken for the ones already there.
+ */
+class ResultStore
+{
+    private static final int KEY_FIELDS = 5; // seed stochMax hydrochoryBool implantationRate adjustmentFactor
+    private static final String OPTIONS_HEADER = "# options: ";
+
+    private final Set<String> completed = new HashSet<String>();
+    private final PrintStream out;
+
+    /**
+     * Opens a store that keeps nothing, writing results straight to the stream.
+     */
+    ResultStore(PrintStream out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * Opens the file for appending, first reading the keys of the runs already in it.
+     * A last line without a newline was cut short when a sweep was killed, so it is
+     * not counted, and is cut off the file before anything new is appended.
+     * @param options the run options of every run in the sweep.
+     * @throws IOException if the file holds results run with other options, or
+     * results without an options header.
+     */
+    ResultStore(File file, String options) throws IOException
+    {
+        boolean hasHeader = false;
+        if (file.exists())
+        {
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            StringBuilder line = new StringBuilder();
+            long length = 0, complete = 0; // bytes read, and bytes up to the last newline
+            int c;
+            try {
+                while ((c = in.read()) != -1)
+                {
+                    length++;
+                    if (c == '\n')
+                    {
+                        String text = line.toString();
+                        if (text.startsWith(OPTIONS_HEADER))
+                        {
+                            String fileOptions = text.substring(OPTIONS_HEADER.length()).trim();
+                            if (!fileOptions.equals(options))
+                                throw new IOException(file + " holds runs with options \"" + fileOptions +
+                                    "\", not \"" + options + "\"; write these results to another file.");
+                            hasHeader = true;
+                        }
+                        else
+                        {
+                            String key = keyOf(text, options);
+                            if (key != null)
+                            {
+                                if (!hasHeader)
+                                    throw new IOException(file + " holds runs without an options header," +
+                                        " so can't be resumed; write these results to another file.");
+                                completed.add(key);
+                            }
+                        }
+                        line.setLength(0);
+                        complete = length;
+                    }
+                    else line.append((char) c);
+                }
+            } finally {
+                in.close();
+            }
+
+            if (complete < length)
+            {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                raf.setLength(complete);
+                raf.close();
+            }
+        }
+        out = new PrintStream(new FileOutputStream(file, true));
+        if (!hasHeader)
+        {
+            out.println(OPTIONS_HEADER + options);
+            out.flush();
+        }
+    }
+
+    /**
+     * @return the key of a run: its seed and independent variables, as they begin the
+     * run's summary lines, then its run options.
+     */
+    static String key(long seed, Parameters params)
+    {
+        return seed + " " + params.stochMax + " " + params.hydrochoryBool + " " +
+            params.implantationRate + " " + params.adjustmentFactor + " " + params.getRunOptions();
+    }
+
+    private static String keyOf(String line, String options)
+    {
+        String[] fields = line.trim().split("\\s+");
+        if (fields.length < KEY_FIELDS) return null;
+
+        StringBuilder key = new StringBuilder(fields[0]);
+        for (int i = 1; i < KEY_FIELDS; i++) key.append(' ').append(fields[i]);
+        return key.append(' ').append(options).toString();
+    }
+
+    synchronized boolean isComplete(String key)
+    {
+        return completed.contains(key);
+    }
+
+    /**
+     * Appends a finished run's summary lines.
+     */
+    synchronized void record(String key, String lines)
+    {
+        out.print(lines);
+        out.flush();
+        completed.add(key);
+    }
+
+    void close()
+    {
+        out.close();
+    }
+}
@@ -0,0 +1,192 @@
+package jointvetch;
+
+import java.util.IdentityHashMap;
+import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jts.linearref.LengthIndexedLine;
+import com.vividsolutions.jts.planargraph.DirectedEdge;
+import com.vividsolutions.jts.planargraph.Node;
+import sim.util.IntBag;
+import sim.util.geo.GeomPlanarGraph;
+import sim.util.geo.GeomPlanarGraphEdge;
+
+/**
+ * The river network's GeomPlanarGraph, compiled into flat arrays so a floating seed
+ * can cross a junction with a few integer lookups. Edges are identified by the index
+ * of their line in river_mls, and nodes by number. For each node it keeps the lines
+ * a seed may continue onto going downstream (lines starting there) and upstream
+ * (lines ending there), in the order the graph's DirectedEdgeStar lists them.
+ *
+ * Each line's vertices are also kept with their distance along the line, so a seed
+ * can be tracked purely by (line, index), as with a LengthIndexedLine, and its
+ * coordinate found by binary search only when it is needed.
+ */
+class RiverGraph
+{
+    static final int NO_NODE = -1;
+
+    /* per edge */
+    private final int[] startNode, endNode;
+    private final double[] length;
+    private final double[] endEntryIndex; // where a seed joining at the end node sits on the line
+
+    /* vertex v of line l is at [vertexFirst[l] + v] */
+    private final int[] vertexFirst;
+    private final double[] vertexX, vertexY;
+    private final double[] vertexIndex; // cumulative length along the line
+
+    /* per node, in compressed rows: node n's lines are at [first[n], first[n+1]) */
+    private final int[] downstreamFirst, downstreamLines;
+    private final int[] upstreamFirst, upstreamLines;
+
+    RiverGraph(GeomPlanarGraph network, MultiLineString river)
+    {
+        int numLines = river.getNumGeometries();
+        IdentityHashMap<Geometry, Integer> lineIds = new IdentityHashMap<Geometry, Integer>();
+        for (int i = 0; i < numLines; i++) lineIds.put(river.getGeometryN(i), i);
+
+        IdentityHashMap<Node, Integer> nodeIds = new IdentityHashMap<Node, Integer>();
+        Node[] nodes = new Node[network.getNodes().size()];
+        for (Object o : network.getNodes())
+        {
+            nodeIds.put((Node) o, nodeIds.size());
+            nodes[nodeIds.size() - 1] = (Node) o;
+        }
+
+        startNode = new int[numLines];
+        endNode = new int[numLines];
+        length = new double[numLines];
+        endEntryIndex = new double[numLines];
+        vertexFirst = new int[numLines + 1];
+        for (int i = 0; i < numLines; i++)
+        {
+            vertexFirst[i + 1] = vertexFirst[i] + river.getGeometryN(i).getNumPoints();
+        }
+        vertexX = new double[vertexFirst[numLines]];
+        vertexY = new double[vertexFirst[numLines]];
+        vertexIndex = new double[vertexFirst[numLines]];
+
+        for (int i = 0; i < numLines; i++)
+        {
+            LineString line = (LineString) river.getGeometryN(i);
+            double totalLength = 0.0;
+            for (int v = 0, k = vertexFirst[i]; k < vertexFirst[i + 1]; v++, k++)
+            {
+                Coordinate c = line.getCoordinateN(v);
+                if (v > 0) totalLength += c.distance(line.getCoordinateN(v - 1));
+                vertexX[k] = c.x;
+                vertexY[k] = c.y;
+                vertexIndex[k] = totalLength;
+            }
+            length[i] = totalLength;
+            endEntryIndex[i] = new LengthIndexedLine(line).indexOf(line.getCoordinateN(line.getNumPoints()-1));
+            startNode[i] = idOf(nodeIds, network.findNode(line.getCoordinateN(0)));
+            endNode[i] = idOf(nodeIds, network.findNode(line.getCoordinateN(line.getNumPoints()-1)));
+        }
+
+        /* a line leaving a node downstream starts there; one leaving upstream ends there */
+        IntBag down = new IntBag(), up = new IntBag();
+        downstreamFirst = new int[nodes.length + 1];
+        upstreamFirst = new int[nodes.length + 1];
+        for (int n = 0; n < nodes.length; n++)
+        {
+            downstreamFirst[n] = down.size();
+            upstreamFirst[n] = up.size();
+            Coordinate here = nodes[n].getCoordinate();
+            for (Object o : nodes[n].getOutEdges().getEdges())
+            {
+                LineString line = ( (GeomPlanarGraphEdge) ( (DirectedEdge) o ).getEdge() ).getLine();
+                int id = lineIds.get(line);
+                if (line.getCoordinateN(0).equals2D(here)) down.add(id);
+                if (line.getCoordinateN(line.getNumPoints()-1).equals2D(here)) up.add(id);
+            }
+        }
+        downstreamFirst[nodes.length] = down.size();
+        upstreamFirst[nodes.length] = up.size();
+        downstreamLines = down.toArray();
+        upstreamLines = up.toArray();
+    }
+
+    private static int idOf(IdentityHashMap<Node, Integer> nodeIds, Node n)
+    {
+        return (n == null) ? NO_NODE : nodeIds.get(n);
+    }
+
+    double getLength(int line)
+    {
+        return length[line];
+    }
+
+    /**
+     * @return the index (distance along the line) of a coordinate lying on the given segment.
+     */
+    double getIndex(int line, int segment, Coordinate c)
+    {
+        int k = vertexFirst[line] + segment;
+        double dx = c.x - vertexX[k];
+        double dy = c.y - vertexY[k];
+        return vertexIndex[k] + Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * @return the coordinate at the (non-negative) index along the line, exactly as
+     * LengthIndexedLine.extractPoint() would place it.
+     */
+    Coordinate getCoordinate(int line, double index)
+    {
+        int first = vertexFirst[line];
+        int last = vertexFirst[line + 1] - 1;
+        if (index <= 0.0) return new Coordinate(vertexX[first], vertexY[first]);
+
+        /* find the first vertex further along than the index */
+        int lo = first + 1, hi = last + 1;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (vertexIndex[mid] > index) hi = mid;
+            else lo = mid + 1;
+        }
+        if (lo > last) return new Coordinate(vertexX[last], vertexY[last]);
+
+        double x0 = vertexX[lo - 1], y0 = vertexY[lo - 1];
+        double x1 = vertexX[lo], y1 = vertexY[lo];
+        double segLen = Math.sqrt((x1 - x0) * (x1 - x0) + (y1 - y0) * (y1 - y0));
+        double frac = (index - vertexIndex[lo - 1]) / segLen;
+        if (frac <= 0.0) return new Coordinate(x0, y0);
+        if (frac >= 1.0) return new Coordinate(x1, y1);
+        return new Coordinate((x1 - x0) * frac + x0, (y1 - y0) * frac + y0);
+    }
+
+    /**
+     * @return the node at the downstream (direction > 0) or upstream end of the line.
+     */
+    int getJunction(int line, int direction)
+    {
+        return (direction > 0) ? endNode[line] : startNode[line];
+    }
+
+    /**
+     * @return how many lines a seed at the node may take going in the direction.
+     */
+    int getNumPaths(int node, int direction)
+    {
+        return (direction > 0)
+            ? downstreamFirst[node + 1] - downstreamFirst[node]
+            : upstreamFirst[node + 1] - upstreamFirst[node];
+    }
+
+    /**
+     * @return the i'th line a seed at the node may take going in the direction.
+     */
+    int getPath(int node, int direction, int i)
+    {
+        return (direction > 0) ? downstreamLines[downstreamFirst[node] + i] : upstreamLines[upstreamFirst[node] + i];
+    }
+
+    /**
+     * @return where a seed arriving from the node sits on the line.
+     */
+    double getEntryIndex(int line, int node)
+    {
+        return (startNode[line] == node) ? 0.0 : endEntryIndex[line];
+    }
+}
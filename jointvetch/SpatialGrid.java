@@ -0,0 +1,105 @@
+package jointvetch;
+
+import java.util.Arrays;
+import sim.util.IntBag;
+
+/**
+ * A uniform grid over a set of points held in primitive x/y arrays. Points are
+ * binned into square cells and sorted by cell, so a radius query only examines
+ * the cells overlapping the search circle. Used by the clustering analyses.
+ */
+class SpatialGrid
+{
+    private final double[] xs, ys;
+    private final double cellSize;
+    private final double minX, minY;
+    private final long cols;
+
+    private final long[] cellIds; // sorted, unique
+    private final int[] cellStart; // first position in items of each cell, plus a final sentinel
+    private final int[] items; // point indices, grouped by cell
+
+    SpatialGrid(double[] xs, double[] ys, int n, double cellSize)
+    {
+        this.xs = xs;
+        this.ys = ys;
+        this.cellSize = cellSize;
+
+        double lowX = Double.POSITIVE_INFINITY, lowY = Double.POSITIVE_INFINITY;
+        double highX = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++)
+        {
+            lowX = Math.min(lowX, xs[i]);
+            lowY = Math.min(lowY, ys[i]);
+            highX = Math.max(highX, xs[i]);
+        }
+        minX = (n == 0) ? 0 : lowX;
+        minY = (n == 0) ? 0 : lowY;
+        cols = (n == 0) ? 1 : (long) Math.floor((highX - minX) / cellSize) + 1;
+
+        /* sort (cell, point) pairs packed into longs, then split them apart */
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++)
+        {
+            packed[i] = (cellOf(xs[i], ys[i]) << 32) | i;
+        }
+        Arrays.sort(packed);
+
+        items = new int[n];
+        long[] ids = new long[n];
+        int[] starts = new int[n + 1];
+        int numCells = 0;
+        for (int i = 0; i < n; i++)
+        {
+            long cell = packed[i] >>> 32;
+            items[i] = (int) packed[i];
+            if (numCells == 0 || ids[numCells - 1] != cell)
+            {
+                ids[numCells] = cell;
+                starts[numCells] = i;
+                numCells++;
+            }
+        }
+        starts[numCells] = n;
+        cellIds = Arrays.copyOf(ids, numCells);
+        cellStart = Arrays.copyOf(starts, numCells + 1);
+    }
+
+    private long cellOf(double x, double y)
+    {
+        long cx = (long) Math.floor((x - minX) / cellSize);
+        long cy = (long) Math.floor((y - minY) / cellSize);
+        return cy * cols + cx;
+    }
+
+    /**
+     * Adds to result the index of every point within radius (inclusive) of (x, y).
+     */
+    void within(double x, double y, double radius, IntBag result)
+    {
+        double radiusSq = radius * radius;
+        long cx = (long) Math.floor((x - minX) / cellSize);
+        long cy = (long) Math.floor((y - minY) / cellSize);
+        long reach = (long) Math.ceil(radius / cellSize);
+
+        for (long gy = cy - reach; gy <= cy + reach; gy++)
+        {
+            if (gy < 0) continue;
+            for (long gx = Math.max(0, cx - reach); gx <= cx + reach && gx < cols; gx++)
+            {
+                int c = Arrays.binarySearch(cellIds, gy * cols + gx);
+                if (c < 0) continue;
+                for (int k = cellStart[c], end = cellStart[c + 1]; k < end; k++)
+                {
+                    int i = items[k];
+                    double dx = xs[i] - x;
+                    double dy = ys[i] - y;
+                    if (dx * dx + dy * dy <= radiusSq)
+                    {
+                        result.add(i);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package jointvetch;
+
+/**
+ * Times the tidal rate and distance of Hydrochory's floating seeds, from the sine and
+ * cosine of each seed's start and the shared table of the cycle's whole hours, against
+ * computing them with Math.sin for every seed and hour, as each seed used to. Run it on
+ * its own; it takes no part in a simulation.
+ *
+ *     java jointvetch.TidalBenchmark [seeds] [hours] [repetitions]
+ */
+class TidalBenchmark
+{
+    /**
+     * Times a seed-hour's tidal rate and distance both ways, for seeds starting at
+     * random times in the cycle; and checks that both give the same values.
+     */
+    public static void main(String[] args)
+    {
+        int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int hours = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        java.util.Random random = new java.util.Random(0);
+        double[] startTime = new double[seeds], startSin = new double[seeds], startCos = new double[seeds];
+        for (int s = 0; s < seeds; s++)
+        {
+            startTime[s] = random.nextDouble() * Hydrochory.TIDAL_CYCLE;
+            startSin[s] = Math.sin( startTime[s]*2*Math.PI/Hydrochory.TIDAL_CYCLE );
+            startCos[s] = Math.cos( startTime[s]*2*Math.PI/Hydrochory.TIDAL_CYCLE );
+        }
+
+        double seedHours = (double) seeds * hours;
+        for (int r = 0; r < repetitions; r++)
+        {
+            long start = System.nanoTime();
+            double computed = 0;
+            for (int s = 0; s < seeds; s++)
+            {
+                double time = startTime[s];
+                for (int h = 0; h < hours; h++)
+                {
+                    double rate = Hydrochory.tidalRateFunction(time);
+                    computed += rate + Hydrochory.distanceToTravel(rate);
+                    time += 1;
+                }
+            }
+            long middle = System.nanoTime();
+
+            double looked = 0;
+            for (int s = 0; s < seeds; s++)
+            {
+                for (int h = 0; h < hours; h++)
+                {
+                    double rate = Hydrochory.tidalRate(startSin[s], startCos[s], h % Hydrochory.TIDAL_CYCLE);
+                    looked += rate + Hydrochory.distanceToTravel(rate);
+                }
+            }
+            long finish = System.nanoTime();
+
+            System.out.printf("sin: %.1f ns/seed-hour, table: %.1f ns/seed-hour (sums %.6g, %.6g)%n",
+                (middle - start) / seedHours, (finish - middle) / seedHours, computed, looked);
+        }
+
+        /* the table against the function, over the first seeds and a few cycles; the rates differ
+            only in their last bits, but now and then that rounds a distance the other way */
+        double worst = 0;
+        int checked = 0, rounded = 0;
+        for (int s = 0; s < Math.min(seeds, 10000); s++)
+        {
+            for (int h = 0; h < 3 * Hydrochory.TIDAL_CYCLE; h++)
+            {
+                double rate = Hydrochory.tidalRateFunction(startTime[s] + h);
+                double tableRate = Hydrochory.tidalRate(startSin[s], startCos[s], h % Hydrochory.TIDAL_CYCLE);
+                worst = Math.max(worst, Math.abs(rate - tableRate));
+                if (Hydrochory.distanceToTravel(rate) != Hydrochory.distanceToTravel(tableRate)) rounded++;
+                checked++;
+            }
+        }
+        System.out.println("Largest difference between table and function: " + worst + " m/h; " +
+            rounded + " of " + checked + " distances rounded the other way");
+    }
+}